@@ -0,0 +1,128 @@
+import java.math.BigInteger;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ranks many permutations of the same size, stored back to back in an IntBuffer.
+ * <p>The batch is cut in ranges of permutations, ranked in parallel on a ForkJoinPool.
+ * Nothing is allocated per permutation:
+ * - up to 20 elements, the rank is computed straight from the buffer with a long bitmask (same as rank64)
+ * - above that, each worker thread uses its LehmerCodec.local() and its own pair of scratch arrays,
+ *   then the factoradic is computed with a product tree (see Factoradic)
+ *
+ * @see Permutations#rankBatch64(IntBuffer, int, long[], ForkJoinPool)
+ * @see Permutations#rankBatch(IntBuffer, int, BigInteger[], ForkJoinPool)
+ * @author drax
+ */
+final class BatchRank {
+	private static final int LEAF = 1 << 15;  // below that many ints, don't split the range
+	private static final int MAX64 = 20;      // 20! is the last factorial that fits in a long
+
+	private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<>();   // { perm, lehmer }
+
+	private BatchRank() {}
+
+	/**
+	 * Writes the rank of the i-th permutation of perms into ranks[i], for every i of ranks.
+	 * @param perms ranks.length * n ints from its position, not modified (the position doesn't move)
+	 * @param n the size of each permutation, <= 20
+	 * @param ranks receives the ranks
+	 * @param pool the pool ranking the ranges, null to stay on the current thread
+	 */
+	static void rank64(IntBuffer perms, int n, long[] ranks, ForkJoinPool pool) {
+		if (n > MAX64)
+			throw new IllegalArgumentException("rank64 needs n <= 20, got " + n);
+		check(perms, n, ranks.length);
+		run(new Rank(perms, n, perms.position(), ranks, null, 0, ranks.length), pool);
+	}
+
+	/**
+	 * Same as rank64() for any size.
+	 */
+	static void rank(IntBuffer perms, int n, BigInteger[] ranks, ForkJoinPool pool) {
+		check(perms, n, ranks.length);
+		run(new Rank(perms, n, perms.position(), null, ranks, 0, ranks.length), pool);
+	}
+
+	private static void check(IntBuffer perms, int n, int k) {
+		if ((long) k * n > perms.remaining())
+			throw new IllegalArgumentException(k + " permutations of " + n + " elements need " + (long) k * n
+					+ " ints, only " + perms.remaining() + " remaining");
+	}
+
+	private static void run(Rank task, ForkJoinPool pool) {
+		if (pool != null) pool.invoke(task);
+		else task.compute();
+	}
+
+	/**
+	 * The perm and lehmer arrays of the current thread, of exactly n ints.
+	 * Like LehmerCodec.local(), they are replaced when the size changes, and reused otherwise.
+	 */
+	private static int[][] scratch(int n) {
+		int[][] s = SCRATCH.get();
+		if (s == null || s[0].length != n) {
+			s = new int[][] { new int[n], new int[n] };
+			SCRATCH.set(s);
+		}
+		return s;
+	}
+
+	/**
+	 * rank64() of the permutation starting at perms[off].
+	 */
+	private static long rank64(IntBuffer perms, int off, int n) {
+		long used = 0;
+		long rank = 0;
+		for (int i = 0; i < n; i++) {
+			int v = perms.get(off + i);
+			long bit = 1L << v;
+			rank = rank * (n - i) + (v - Long.bitCount(used & (bit - 1)));
+			used |= bit;
+		}
+		return rank;
+	}
+
+	/**
+	 * Ranks the permutations [lo, hi[ of the batch, into ranks64 or ranksBig (the other one is null).
+	 */
+	private static final class Rank extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntBuffer perms;
+		private final int n, base, lo, hi;
+		private final long[] ranks64;
+		private final BigInteger[] ranksBig;
+
+		Rank(IntBuffer perms, int n, int base, long[] ranks64, BigInteger[] ranksBig, int lo, int hi) {
+			this.perms = perms; this.n = n; this.base = base;
+			this.ranks64 = ranks64; this.ranksBig = ranksBig; this.lo = lo; this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long) (hi - lo) * n <= LEAF || hi - lo == 1) {
+				if (ranks64 != null) {
+					for (int j = lo; j < hi; j++)
+						ranks64[j] = rank64(perms, base + j * n, n);
+				} else if (n <= MAX64) {
+					for (int j = lo; j < hi; j++)
+						ranksBig[j] = BigInteger.valueOf(rank64(perms, base + j * n, n));
+				} else {
+					LehmerCodec codec = LehmerCodec.local(n);
+					int[][] scratch = scratch(n);
+					int[] perm = scratch[0];
+					int[] lehmer = scratch[1];
+					for (int j = lo; j < hi; j++) {
+						perms.get(base + j * n, perm);
+						ranksBig[j] = Factoradic.factoradic(codec.encode(perm, lehmer), null);
+					}
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Rank(perms, n, base, ranks64, ranksBig, lo, mid),
+					new Rank(perms, n, base, ranks64, ranksBig, mid, hi));
+		}
+	}
+}
@@ -1,10 +1,19 @@
 
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
 /**
  * An interface defining the basic operations one expects from a BitField.
  * 3 Implementations are given:
  * 1. Using Java's boolean[]
  * 2. Using Java's BitSet
  * 3. A custom implementation similar to BitSet but lighter (no checks)
+ * More implementations, using 64-bit words and able to go over 2^31 bits (see LargeBitField):
+ * 4. BitFieldLong, the same as 3. with a long[]
+ * 5. BitFieldDirect, off-heap
+ * 6. BitFieldMapped, in a memory-mapped file
+ * And one for parallel algorithms:
+ * 7. BitFieldAtomic, where several threads can set and clear bits at the same time
  * 
  * @author drax
  *
@@ -52,5 +61,141 @@ public interface BitField {
 	 * @return the value of that bit.
 	 */
 	public boolean get(int n);
-	
+
+	// Bulk operations ------------------------------------------------------------
+	// The defaults go bit by bit, implementations are expected to work on whole words.
+
+	/**
+	 * The number of bits set to 1.
+	 * @return the number of set bits
+	 */
+	public default int cardinality() {
+		return rank(size());
+	}
+
+	/**
+	 * Counts the bits set in [0, n[.
+	 * @param n bit number, 0 <= n <= size()
+	 * @return the number of set bits strictly before n
+	 */
+	public default int rank(int n) {
+		int c = 0;
+		for (int i = 0; i < n; i++)
+			if (get(i)) c++;
+		return c;
+	}
+
+	/**
+	 * Finds the k-th set bit.
+	 * @param k the rank of the bit, starting at 0
+	 * @return its bit number, -1 if there are not that many bits set
+	 */
+	public default int select(int k) {
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1))
+			if (k-- == 0) return i;
+		return -1;
+	}
+
+	/**
+	 * The first set bit at or after from.
+	 * @param from bit number, starting at 0
+	 * @return the bit number, -1 if there is none
+	 */
+	public default int nextSetBit(int from) {
+		for (int i = from; i < size(); i++)
+			if (get(i)) return i;
+		return -1;
+	}
+
+	/**
+	 * The first cleared bit at or after from.
+	 * @param from bit number, starting at 0
+	 * @return the bit number, size() if there is none
+	 */
+	public default int nextClearBit(int from) {
+		int n = size();
+		for (int i = from; i < n; i++)
+			if (!get(i)) return i;
+		return n;
+	}
+
+	/**
+	 * Sets all the bits in [from, to[.
+	 * @param from first bit number (inclusive)
+	 * @param to last bit number (exclusive)
+	 */
+	public default void setRange(int from, int to) {
+		for (int i = from; i < to; i++)
+			set(i);
+	}
+
+	/**
+	 * Clears all the bits in [from, to[.
+	 * @param from first bit number (inclusive)
+	 * @param to last bit number (exclusive)
+	 */
+	public default void clearRange(int from, int to) {
+		for (int i = from; i < to; i++)
+			clear(i);
+	}
+
+	/**
+	 * this = this & other
+	 * @param other a BitField of the same size
+	 */
+	public default void and(BitField other) {
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1))
+			if (!other.get(i)) clear(i);
+	}
+
+	/**
+	 * this = this | other
+	 * @param other a BitField of the same size
+	 */
+	public default void or(BitField other) {
+		for (int i = other.nextSetBit(0); i >= 0; i = other.nextSetBit(i + 1))
+			set(i);
+	}
+
+	/**
+	 * this = this ^ other
+	 * @param other a BitField of the same size
+	 */
+	public default void xor(BitField other) {
+		for (int i = other.nextSetBit(0); i >= 0; i = other.nextSetBit(i + 1))
+			set(i, !get(i));
+	}
+
+	/**
+	 * this = this & ~other
+	 * @param other a BitField of the same size
+	 */
+	public default void andNot(BitField other) {
+		for (int i = other.nextSetBit(0); i >= 0; i = other.nextSetBit(i + 1))
+			clear(i);
+	}
+
+	/**
+	 * Iterates over the set bits, in increasing order.
+	 * The BitField must not be modified during the iteration.
+	 * @return an iterator of the bit numbers
+	 */
+	public default PrimitiveIterator.OfInt setBits() {
+		return new PrimitiveIterator.OfInt() {
+			private int next = nextSetBit(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if (next < 0) throw new NoSuchElementException();
+				int cur = next;
+				next = cur + 1 < size() ? nextSetBit(cur + 1) : -1;
+				return cur;
+			}
+		};
+	}
 }
@@ -0,0 +1,87 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A BitField that several threads can update at the same time.
+ * <p>Single bit operations are atomic read-modify-write of their 64-bit word (getAndBitwiseOr/And),
+ * so two threads setting different bits of the same word don't lose each other's bit,
+ * and trySet() tells which thread set a bit first.
+ * Reads are volatile. The bulk operations (set(), clear(), and the word operations of BitField)
+ * are NOT atomic: only use them when no other thread is touching the BitField.
+ * The padding bits after the last one are always kept at 0.
+ * @author drax
+ */
+public class BitFieldAtomic implements BitField {
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final int size;
+	private final long[] words;
+
+	public BitFieldAtomic(int size) {
+		this.size = size;
+		words = new long[((size - 1) >> 6) + 1];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void set() {
+		Arrays.fill(words, -1L);
+		if ((size & 63) != 0)
+			words[words.length - 1] = (1L << size) - 1;
+		VarHandle.fullFence();
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+		VarHandle.fullFence();
+	}
+
+	@Override
+	public void set(int bitIndex) {
+		WORDS.getAndBitwiseOr(words, bitIndex >>> 6, 1L << bitIndex);
+	}
+
+	/**
+	 * Sets a bit, atomically.
+	 * @param bitIndex the bit to set
+	 * @return true if this call set it, false if it was already set
+	 */
+	public boolean trySet(int bitIndex) {
+		long bit = 1L << bitIndex;
+		return ((long) WORDS.getAndBitwiseOr(words, bitIndex >>> 6, bit) & bit) == 0;
+	}
+
+	@Override
+	public void clear(int bitIndex) {
+		WORDS.getAndBitwiseAnd(words, bitIndex >>> 6, ~(1L << bitIndex));
+	}
+
+	@Override
+	public void set(int bitIndex, boolean b) {
+		if (b) set(bitIndex);
+		else clear(bitIndex);
+	}
+
+	@Override
+	public boolean get(int bitIndex) {
+		return ((long) WORDS.getVolatile(words, bitIndex >>> 6) & (1L << bitIndex)) != 0;
+	}
+
+	@Override
+	public int nextClearBit(int from) {
+		if (from >= size) return size;
+		int w = from >>> 6;
+		long word = ~(long) WORDS.getVolatile(words, w) & (-1L << from);
+		while (word == 0) {
+			if (++w == words.length) return size;
+			word = ~(long) WORDS.getVolatile(words, w);
+		}
+		return (int) Math.min(((long) w << 6) + Long.numberOfTrailingZeros(word), size);
+	}
+}
@@ -0,0 +1,153 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A BitField stored off-heap, in direct ByteBuffers seen as 64-bit words.
+ * The GC never has to scan or move it, and it does not count in -Xmx, only in -XX:MaxDirectMemorySize.
+ * <p>A ByteBuffer can't go over 2 GB, so the words are split in segments of 2^27 words (1 GB).
+ * That way, it can hold more than 2^31 bits (see LargeBitField).
+ * <p>Note: unlike BitFieldDrax, the padding bits after the last one are always kept at 0,
+ * so the words can be counted as they are (see RankSelectDirect).
+ * @author drax
+ */
+public class BitFieldDirect implements LargeBitField {
+	static final int SEGMENT_SHIFT = 27;                      // words per segment
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+	private static final long[] ONES = new long[1024];         // patterns for the bulk fills
+	private static final long[] ZEROS = new long[1024];
+	static {
+		Arrays.fill(ONES, -1L);
+	}
+
+	private final long size;
+	private final LongBuffer[] segments;
+
+	public BitFieldDirect(int size) {
+		this((long) size);
+	}
+
+	public BitFieldDirect(long size) {
+		this(size, allocate(size));
+	}
+
+	/**
+	 * Uses the given buffers (direct or mapped) as storage, their content is kept as is.
+	 * @param size the number of bits
+	 * @param buffers one buffer per segment, starting at their position.
+	 *        All of them hold 2^27 words (2^30 bytes) except the last one, which holds the rest.
+	 */
+	BitFieldDirect(long size, ByteBuffer... buffers) {
+		this.size = size;
+		segments = new LongBuffer[buffers.length];
+		for (int s = 0; s < buffers.length; s++)
+			segments[s] = buffers[s].order(ByteOrder.nativeOrder()).asLongBuffer();
+	}
+
+	/**
+	 * The number of 64-bit words needed to store size bits.
+	 */
+	static long wordCount(long size) {
+		return ((size - 1) >> 6) + 1;
+	}
+
+	/**
+	 * The size in bytes of each segment needed to store size bits.
+	 */
+	static long[] segmentBytes(long size) {
+		long words = wordCount(size);
+		int count = (int) (((words - 1) >> SEGMENT_SHIFT) + 1);
+		long[] bytes = new long[count];
+		for (int s = 0; s < count; s++)
+			bytes[s] = Math.min(words - ((long) s << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT) << 3;
+		return bytes;
+	}
+
+	private static ByteBuffer[] allocate(long size) {
+		long[] bytes = segmentBytes(size);
+		ByteBuffer[] buffers = new ByteBuffer[bytes.length];
+		for (int s = 0; s < bytes.length; s++)
+			buffers[s] = ByteBuffer.allocateDirect((int) bytes[s]);
+		return buffers;
+	}
+
+	long word(long w) {
+		return segments[(int) (w >>> SEGMENT_SHIFT)].get((int) w & SEGMENT_MASK);
+	}
+
+	void word(long w, long value) {
+		segments[(int) (w >>> SEGMENT_SHIFT)].put((int) w & SEGMENT_MASK, value);
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long longSize() {
+		return size;
+	}
+
+	/**
+	 * Fills every word with the given pattern, 1024 words per bulk copy.
+	 */
+	private void fill(long[] pattern) {
+		for (LongBuffer seg : segments) {
+			int limit = seg.limit();
+			for (int w = 0; w < limit; w += pattern.length)
+				seg.put(w, pattern, 0, Math.min(pattern.length, limit - w));
+		}
+	}
+
+	@Override
+	public void set() {
+		fill(ONES);
+		if ((size & 63) != 0)
+			word(wordCount(size) - 1, (1L << size) - 1);
+	}
+
+	@Override
+	public void clear() {
+		fill(ZEROS);
+	}
+
+	@Override
+	public void set(int bitIndex) {
+		set((long) bitIndex);
+	}
+
+	@Override
+	public void clear(int bitIndex) {
+		clear((long) bitIndex);
+	}
+
+	@Override
+	public void set(int bitIndex, boolean b) {
+		if (b) set((long) bitIndex);
+		else clear((long) bitIndex);
+	}
+
+	@Override
+	public boolean get(int bitIndex) {
+		return get((long) bitIndex);
+	}
+
+	@Override
+	public void set(long bitIndex) {
+		long w = bitIndex >>> 6;
+		word(w, word(w) | (1L << bitIndex));
+	}
+
+	@Override
+	public void clear(long bitIndex) {
+		long w = bitIndex >>> 6;
+		word(w, word(w) & ~(1L << bitIndex));
+	}
+
+	@Override
+	public boolean get(long bitIndex) {
+		return (word(bitIndex >>> 6) & (1L << bitIndex)) != 0;
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
  * A simple boolean array backed with ints
  * for memory size and performance.
  * Note: it's basically a lighter version of BitSet with no checks, no growing, and ints instead of longs
+ * Note: the padding bits after the last one are always kept at 0, so bulk operations can count whole words.
  * Note: you would normally use q = n/32 and r = n%32 but:
  *   - Java is faster when using bitshift instead of arithmetic (yeah, neither the compiler nor the JIT do any optimisation)
  *   - 1 << bitIndex works just as well as 1 << (bitIndex % 32) or 1 << (bitIndex & 31). The left shift already handles this (not documented?)
@@ -32,6 +33,8 @@ public class BitFieldDrax implements BitField {
 	@Override
 	public void set() {
 		Arrays.fill(words, -1);
+		if (words.length != 0)
+			words[words.length - 1] = -1 >>> -size;
 	}
 
 	@Override
@@ -55,6 +58,135 @@ public class BitFieldDrax implements BitField {
 		else clear(bitIndex);
 	}
 
+	@Override
+	public int cardinality() {
+		int c = 0;
+		for (int w : words)
+			c += Integer.bitCount(w);
+		return c;
+	}
+
+	@Override
+	public int rank(int n) {
+		int w = n >> 5;
+		int c = 0;
+		for (int i = 0; i < w; i++)
+			c += Integer.bitCount(words[i]);
+		if ((n & 31) != 0)
+			c += Integer.bitCount(words[w] & ((1 << n) - 1));
+		return c;
+	}
+
+	@Override
+	public int select(int k) {
+		for (int w = 0; w < words.length; w++) {
+			int c = Integer.bitCount(words[w]);
+			if (k < c)
+				return (w << 5) + RankSelectBlocked.selectInWord(words[w] & 0xFFFFFFFFL, k);
+			k -= c;
+		}
+		return -1;
+	}
+
+	@Override
+	public int nextSetBit(int from) {
+		if (from >= size) return -1;
+		int w = from >> 5;
+		int word = words[w] & (-1 << from);
+		while (word == 0) {
+			if (++w == words.length) return -1;
+			word = words[w];
+		}
+		return (w << 5) + Integer.numberOfTrailingZeros(word);
+	}
+
+	@Override
+	public int nextClearBit(int from) {
+		if (from >= size) return size;
+		int w = from >> 5;
+		int word = ~words[w] & (-1 << from);
+		while (word == 0) {
+			if (++w == words.length) return size;
+			word = ~words[w];
+		}
+		return Math.min((w << 5) + Integer.numberOfTrailingZeros(word), size);
+	}
+
+	@Override
+	public void setRange(int from, int to) {
+		if (from >= to) return;
+		int first = from >> 5;
+		int last = (to - 1) >> 5;
+		int firstMask = -1 << from;
+		int lastMask = -1 >>> -to;
+		if (first == last) {
+			words[first] |= firstMask & lastMask;
+		} else {
+			words[first] |= firstMask;
+			Arrays.fill(words, first + 1, last, -1);
+			words[last] |= lastMask;
+		}
+	}
+
+	@Override
+	public void clearRange(int from, int to) {
+		if (from >= to) return;
+		int first = from >> 5;
+		int last = (to - 1) >> 5;
+		int firstMask = -1 << from;
+		int lastMask = -1 >>> -to;
+		if (first == last) {
+			words[first] &= ~(firstMask & lastMask);
+		} else {
+			words[first] &= ~firstMask;
+			Arrays.fill(words, first + 1, last, 0);
+			words[last] &= ~lastMask;
+		}
+	}
+
+	@Override
+	public void and(BitField other) {
+		if (!(other instanceof BitFieldDrax)) {
+			BitField.super.and(other);
+			return;
+		}
+		int[] o = ((BitFieldDrax) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] &= o[i];
+	}
+
+	@Override
+	public void or(BitField other) {
+		if (!(other instanceof BitFieldDrax)) {
+			BitField.super.or(other);
+			return;
+		}
+		int[] o = ((BitFieldDrax) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] |= o[i];
+	}
+
+	@Override
+	public void xor(BitField other) {
+		if (!(other instanceof BitFieldDrax)) {
+			BitField.super.xor(other);
+			return;
+		}
+		int[] o = ((BitFieldDrax) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] ^= o[i];
+	}
+
+	@Override
+	public void andNot(BitField other) {
+		if (!(other instanceof BitFieldDrax)) {
+			BitField.super.andNot(other);
+			return;
+		}
+		int[] o = ((BitFieldDrax) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] &= ~o[i];
+	}
 
 	@Override
 		public String toString() {
@@ -0,0 +1,214 @@
+import java.util.Arrays;
+
+/**
+ * Same as BitFieldDrax but with 64-bit words.
+ * <p>Longs halve the number of memory accesses of bulk operations, and a long[] can hold up
+ * to 2^37 bits, so this one also implements LargeBitField.
+ * The padding bits after the last one are always kept at 0.
+ * @author drax
+ */
+public class BitFieldLong implements LargeBitField {
+	private final long size;
+	private final long[] words;
+
+	public BitFieldLong(int size) {
+		this((long) size);
+	}
+
+	public BitFieldLong(long size) {
+		this.size = size;
+		words = new long[(int) (((size - 1) >> 6) + 1)];
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long longSize() {
+		return size;
+	}
+
+	@Override
+	public void set() {
+		Arrays.fill(words, -1L);
+		if ((size & 63) != 0)
+			words[words.length - 1] = (1L << size) - 1;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	@Override
+	public void set(int bitIndex) {
+		words[bitIndex >>> 6] |= (1L << bitIndex);
+	}
+
+	@Override
+	public void clear(int bitIndex) {
+		words[bitIndex >>> 6] &= ~(1L << bitIndex);
+	}
+
+	@Override
+	public void set(int bitIndex, boolean b) {
+		if (b) set(bitIndex);
+		else clear(bitIndex);
+	}
+
+	@Override
+	public boolean get(int bitIndex) {
+		return (words[bitIndex >>> 6] & (1L << bitIndex)) != 0;
+	}
+
+	@Override
+	public void set(long bitIndex) {
+		words[(int) (bitIndex >>> 6)] |= (1L << bitIndex);
+	}
+
+	@Override
+	public void clear(long bitIndex) {
+		words[(int) (bitIndex >>> 6)] &= ~(1L << bitIndex);
+	}
+
+	@Override
+	public boolean get(long bitIndex) {
+		return (words[(int) (bitIndex >>> 6)] & (1L << bitIndex)) != 0;
+	}
+
+	// Bulk operations, on the first 2^31 bits ------------------------------------
+
+	@Override
+	public int cardinality() {
+		long c = 0;
+		for (long w : words)
+			c += Long.bitCount(w);
+		return (int) Math.min(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int rank(int n) {
+		int w = n >>> 6;
+		int c = 0;
+		for (int i = 0; i < w; i++)
+			c += Long.bitCount(words[i]);
+		if ((n & 63) != 0)
+			c += Long.bitCount(words[w] & ((1L << n) - 1));
+		return c;
+	}
+
+	@Override
+	public int select(int k) {
+		int end = Math.min(words.length, 1 << 25);  // words of the first 2^31 bits
+		for (int w = 0; w < end; w++) {
+			int c = Long.bitCount(words[w]);
+			if (k < c)
+				return (w << 6) + RankSelectBlocked.selectInWord(words[w], k);
+			k -= c;
+		}
+		return -1;
+	}
+
+	@Override
+	public int nextSetBit(int from) {
+		if (from >= size()) return -1;
+		int w = from >>> 6;
+		long word = words[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == words.length || w == 1 << 25) return -1;
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	@Override
+	public int nextClearBit(int from) {
+		int n = size();
+		if (from >= n) return n;
+		int w = from >>> 6;
+		long word = ~words[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == words.length || w == 1 << 25) return n;
+			word = ~words[w];
+		}
+		return (int) Math.min((long) (w << 6) + Long.numberOfTrailingZeros(word), n);
+	}
+
+	@Override
+	public void setRange(int from, int to) {
+		if (from >= to) return;
+		int first = from >>> 6;
+		int last = (to - 1) >>> 6;
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		if (first == last) {
+			words[first] |= firstMask & lastMask;
+		} else {
+			words[first] |= firstMask;
+			Arrays.fill(words, first + 1, last, -1L);
+			words[last] |= lastMask;
+		}
+	}
+
+	@Override
+	public void clearRange(int from, int to) {
+		if (from >= to) return;
+		int first = from >>> 6;
+		int last = (to - 1) >>> 6;
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		if (first == last) {
+			words[first] &= ~(firstMask & lastMask);
+		} else {
+			words[first] &= ~firstMask;
+			Arrays.fill(words, first + 1, last, 0L);
+			words[last] &= ~lastMask;
+		}
+	}
+
+	@Override
+	public void and(BitField other) {
+		if (!(other instanceof BitFieldLong)) {
+			LargeBitField.super.and(other);
+			return;
+		}
+		long[] o = ((BitFieldLong) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] &= o[i];
+	}
+
+	@Override
+	public void or(BitField other) {
+		if (!(other instanceof BitFieldLong)) {
+			LargeBitField.super.or(other);
+			return;
+		}
+		long[] o = ((BitFieldLong) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] |= o[i];
+	}
+
+	@Override
+	public void xor(BitField other) {
+		if (!(other instanceof BitFieldLong)) {
+			LargeBitField.super.xor(other);
+			return;
+		}
+		long[] o = ((BitFieldLong) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] ^= o[i];
+	}
+
+	@Override
+	public void andNot(BitField other) {
+		if (!(other instanceof BitFieldLong)) {
+			LargeBitField.super.andNot(other);
+			return;
+		}
+		long[] o = ((BitFieldLong) other).words;
+		for (int i = 0; i < words.length; i++)
+			words[i] &= ~o[i];
+	}
+}
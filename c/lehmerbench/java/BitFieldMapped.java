@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A BitField stored in a memory-mapped file, so its content survives restarts.
+ * <p>The file is just the 64-bit words in native order, with no header: opening it again with the
+ * same size gives back the same bits. The OS writes the pages back on its own, force() makes sure
+ * everything is on disk.
+ * <p>Same segments as BitFieldDirect, so it can hold more than 2^31 bits.
+ * @author drax
+ */
+public class BitFieldMapped extends BitFieldDirect {
+	private final MappedByteBuffer[] maps;
+
+	private BitFieldMapped(long size, MappedByteBuffer[] maps) {
+		super(size, maps);
+		this.maps = maps;
+	}
+
+	/**
+	 * Opens (or creates, all cleared) the file holding a BitField of the given size.
+	 * @param file the file
+	 * @param size the number of bits
+	 * @return the BitField
+	 * @throws IOException if the file can't be mapped, or exists with another size
+	 */
+	public static BitFieldMapped open(Path file, long size) throws IOException {
+		long[] bytes = segmentBytes(size);
+		long total = wordCount(size) << 3;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long existing = ch.size();
+			if (existing != 0 && existing != total)
+				throw new IOException(file + ": expected " + total + " bytes, found " + existing);
+			MappedByteBuffer[] maps = new MappedByteBuffer[bytes.length];
+			long pos = 0;
+			for (int s = 0; s < bytes.length; s++) {
+				maps[s] = ch.map(MapMode.READ_WRITE, pos, bytes[s]);  // grows the file if needed (zeros)
+				pos += bytes[s];
+			}
+			return new BitFieldMapped(size, maps);
+		}
+	}
+
+	/**
+	 * Writes all changes to the storage device.
+	 */
+	public void force() {
+		for (MappedByteBuffer m : maps)
+			m.force();
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ * Receives the cycles of a permutation one at a time, see Permutations.forEachCycle().
+ * <p>Cycles are not copied anywhere: a cycle is given by its first index and its length,
+ * its elements being start, p[start], p[p[start]]... (length of them).
+ *
+ * @author drax
+ */
+@FunctionalInterface
+public interface CycleVisitor {
+
+	/**
+	 * Called once per cycle, in increasing order of their smallest element (which is start).
+	 * @param start the first (and smallest) index of the cycle
+	 * @param length the number of elements of the cycle, 1 for a fixed point
+	 */
+	public void visit(int start, int length);
+}
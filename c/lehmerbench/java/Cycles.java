@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * A compact cycle decomposition: all the cycles one after the other in a single int[],
+ * and the offset of each cycle in another one.
+ * <p>Cycle c is elements[offsets[c], offsets[c+1][. Whatever the number of cycles, that's
+ * two arrays instead of one per cycle (findCycles() allocates millions of tiny arrays for
+ * a permutation made of transpositions).
+ * <p>The cycles are in the same order as findCycles(): by smallest element, each one starting
+ * with it and followed by its successors (i, p[i], p[p[i]]...).
+ *
+ * @see Permutations#findCyclesCompact(int[])
+ * @author drax
+ */
+public final class Cycles {
+	private final int[] elements;  // every cycle, one after the other
+	private final int[] offsets;   // start of each cycle in elements, plus the total length at [count]
+	private final int count;
+
+	private Cycles(int[] elements, int[] offsets, int count) {
+		this.elements = elements;
+		this.offsets = offsets;
+		this.count = count;
+	}
+
+	/**
+	 * Decomposes p in cycles. p is not modified: visited elements are marked in a side BitField
+	 * (size/8 bytes), so this works up to the biggest int[].
+	 * <p>Complexity: O(n)
+	 * @param p a permutation
+	 * @return its cycles
+	 */
+	static Cycles of(int[] p) {
+		final int n = p.length;
+		int[] elements = new int[n];
+		int[] offsets = new int[16];
+		int count = 0;
+		int o = 0;
+		BitField visited = new BitFieldDrax(n);
+		for (int i = visited.nextClearBit(0); i < n; i = visited.nextClearBit(i + 1)) {
+			if (count + 1 == offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length << 1);
+			offsets[count++] = o;
+			int j = i;
+			do {
+				elements[o++] = j;
+				visited.set(j);
+			} while ((j = p[j]) != i);
+		}
+		offsets[count] = o;
+		return new Cycles(elements, offsets, count);
+	}
+
+	/**
+	 * The number of cycles, fixed points included.
+	 * @return the count
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * The size of the permutation (sum of the lengths of all cycles).
+	 * @return the size
+	 */
+	public int size() {
+		return offsets[count];
+	}
+
+	/**
+	 * The length of a cycle.
+	 * @param c 0 <= c < count()
+	 * @return its number of elements
+	 */
+	public int length(int c) {
+		return offsets[c + 1] - offsets[c];
+	}
+
+	/**
+	 * An element of a cycle.
+	 * @param c 0 <= c < count()
+	 * @param k 0 <= k < length(c)
+	 * @return the k-th element of the cycle c
+	 */
+	public int get(int c, int k) {
+		return elements[offsets[c] + k];
+	}
+
+	/**
+	 * The underlying array of elements, not a copy. Cycle c is in [offset(c), offset(c+1)[.
+	 * @return all the cycles one after the other
+	 */
+	public int[] elements() {
+		return elements;
+	}
+
+	/**
+	 * Where a cycle starts in elements().
+	 * @param c 0 <= c <= count() (count() gives the end of the last cycle)
+	 * @return its offset
+	 */
+	public int offset(int c) {
+		return offsets[c];
+	}
+
+	/**
+	 * Same as Permutations.isEven(findCycles(p)), in O(1).
+	 * Each cycle of length L is L-1 transpositions, so the parity is the one of size() - count().
+	 * @return true if the permutation is even
+	 */
+	public boolean isEven() {
+		return ((size() - count) & 1) == 0;
+	}
+
+	/**
+	 * Same format as Permutations.cyclesToString().
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int c = 0; c < count; c++) {
+			sb.append('(');
+			for (int k = offsets[c]; k < offsets[c + 1]; k++) { sb.append(elements[k]).append(' '); }
+			sb.deleteCharAt(sb.length()-1).append(')');
+		}
+		return sb.toString();
+	}
+}
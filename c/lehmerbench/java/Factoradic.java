@@ -0,0 +1,249 @@
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Divide and conquer (binary splitting) conversions between Lehmer codes and factoradic numbers.
+ * <p>Let a[k] = lehmer[n-1-k] be the digit of weight k!. For any range [lo, hi[ of digits, let
+ * V(lo, hi) = sum of a[k] * k!/lo! for k in [lo, hi[ and P(lo, hi) = (lo+1) * (lo+2) * ... * hi = hi!/lo!
+ * Then for any lo < m < hi:
+ *   V(lo, hi) = V(lo, m) + P(lo, m) * V(m, hi)   with   0 <= V(lo, m) < P(lo, m)
+ * and the factoradic is V(0, n).
+ *
+ * <p>Permutations.factoradic() adds one digit at a time to a growing number, which costs O(n) operations
+ * on numbers of O(n log n) bits, so O(n²) overall. Here, the numbers multiplied together are balanced,
+ * which lets BigInteger use Karatsuba / Toom-Cook on the big ones.
+ * The other direction is the same tree, read top-down: one divideAndRemainder by P(lo, m) splits
+ * the number in two independent halves.
+ * <p>Both directions can run the subtrees in parallel on a ForkJoinPool.
+ *
+ * @see Permutations#factoradicTree(int[], ForkJoinPool)
+ * @see Permutations#inverseFactoradicTree(BigInteger, int, ForkJoinPool)
+ * @author drax
+ */
+final class Factoradic {
+	private static final int LEAF = 32;             // below that many digits, go one digit at a time
+	private static final int PARALLEL_LEAF = 2048;  // below that many digits, don't fork
+
+	private Factoradic() {}
+
+	/**
+	 * P(lo, hi) for a small range.
+	 */
+	private static BigInteger product(int lo, int hi) {
+		BigInteger p = BigInteger.ONE;
+		long acc = 1;
+		for (int j = lo + 1; j <= hi; j++) {
+			if (acc > Long.MAX_VALUE / j) {
+				p = p.multiply(BigInteger.valueOf(acc));
+				acc = 1;
+			}
+			acc *= j;
+		}
+		return p.multiply(BigInteger.valueOf(acc));
+	}
+
+	/**
+	 * Computes the factoradic number of a Lehmer code.
+	 * @param lehmer the Lehmer code
+	 * @param pool the pool running the subtrees, null to stay on the current thread
+	 * @return same as Permutations.factoradic(lehmer)
+	 */
+	static BigInteger factoradic(int[] lehmer, ForkJoinPool pool) {
+		if (lehmer.length == 0) return BigInteger.ZERO;
+		Encode task = new Encode(lehmer, 0, lehmer.length, false, pool != null);
+		return (pool != null ? pool.invoke(task) : task.compute())[0];
+	}
+
+	/**
+	 * Converts a factoradic number to a Lehmer code of the given size.
+	 * @param factoradic the number
+	 * @param size the size of the Lehmer code
+	 * @param pool the pool running the subtrees, null to stay on the current thread
+	 * @return same as Permutations.inverseFactoradic(factoradic, size)
+	 */
+	static int[] inverseFactoradic(BigInteger factoradic, int size, ForkJoinPool pool) {
+		if (size == 0) return new int[0];
+		Node tree = build(size, pool);
+		if (factoradic.compareTo(tree.p) >= 0)    // digits above size! are dropped, like the original
+			factoradic = factoradic.mod(tree.p);
+		return decode(factoradic, tree, size, pool);
+	}
+
+	/**
+	 * Converts a factoradic number to the smallest Lehmer code representing it.
+	 * @param factoradic the number
+	 * @param pool the pool running the subtrees, null to stay on the current thread
+	 * @return same as Permutations.inverseFactoradic(factoradic)
+	 */
+	static int[] inverseFactoradic(BigInteger factoradic, ForkJoinPool pool) {
+		// Smallest n such that factoradic < n!, first estimated with log2(n!) then adjusted exactly
+		int bits = factoradic.bitLength();
+		int n = 1;
+		double log = 0;
+		while (log < bits - 1)
+			log += Math.log(++n) / Math.log(2);
+		final int estimate = n;
+		Node tree = build(n, pool);
+		BigInteger fact = tree.p;
+		while (factoradic.compareTo(fact) >= 0)
+			fact = fact.multiply(BigInteger.valueOf(++n));
+		while (n > 1) {
+			BigInteger smaller = fact.divide(BigInteger.valueOf(n));
+			if (factoradic.compareTo(smaller) >= 0) break;
+			fact = smaller;
+			n--;
+		}
+		if (n != estimate)           // the estimate was off, build the tree of the right size
+			tree = build(n, pool);
+		return decode(factoradic, tree, n, pool);
+	}
+
+	/**
+	 * The product tree of [0, n[, whose root holds n!.
+	 */
+	private static Node build(int n, ForkJoinPool pool) {
+		return pool != null ? pool.invoke(new Build(0, n, true)) : new Build(0, n, false).compute();
+	}
+
+	/**
+	 * Writes the size digits of factoradic, which must be below size!, split along tree.
+	 */
+	private static int[] decode(BigInteger factoradic, Node tree, int size, ForkJoinPool pool) {
+		int[] res = new int[size];
+		boolean parallel = pool != null;
+		Decode task = new Decode(factoradic, tree, 0, size, res, parallel);
+		if (parallel) pool.invoke(task);
+		else task.compute();
+		return res;
+	}
+
+	/**
+	 * Computes {V(lo, hi), P(lo, hi)} for the digits a[k] = lehmer[n-1-k].
+	 * P is only computed when asked (only left children need it).
+	 */
+	private static final class Encode extends RecursiveTask<BigInteger[]> {
+		private static final long serialVersionUID = 1L;
+		private final int[] lehmer;
+		private final int lo, hi;
+		private final boolean needP, parallel;
+
+		Encode(int[] lehmer, int lo, int hi, boolean needP, boolean parallel) {
+			this.lehmer = lehmer; this.lo = lo; this.hi = hi;
+			this.needP = needP; this.parallel = parallel;
+		}
+
+		@Override
+		protected BigInteger[] compute() {
+			final int last = lehmer.length - 1;
+			if (hi - lo <= LEAF) {
+				BigInteger v = BigInteger.valueOf(lehmer[last - (hi - 1)]);
+				for (int k = hi - 2; k >= lo; k--)
+					v = v.multiply(BigInteger.valueOf(k + 1)).add(BigInteger.valueOf(lehmer[last - k]));
+				return new BigInteger[] { v, needP ? product(lo, hi) : null };
+			}
+			int m = (lo + hi) >>> 1;
+			Encode left = new Encode(lehmer, lo, m, true, parallel);
+			Encode right = new Encode(lehmer, m, hi, needP, parallel);
+			BigInteger[] l, r;
+			if (parallel && hi - lo > PARALLEL_LEAF) {
+				right.fork();
+				l = left.compute();
+				r = right.join();
+			} else {
+				l = left.compute();
+				r = right.compute();
+			}
+			BigInteger v = l[0].add(l[1].multiply(r[0]));
+			return new BigInteger[] { v, needP ? l[1].multiply(r[1]) : null };
+		}
+	}
+
+	/**
+	 * A node of the product tree: P(lo, hi) and the nodes of both halves (null for leaves).
+	 */
+	private static final class Node {
+		final BigInteger p;
+		final Node left, right;
+
+		Node(BigInteger p, Node left, Node right) {
+			this.p = p; this.left = left; this.right = right;
+		}
+	}
+
+	/**
+	 * Builds the product tree of [lo, hi[, split the same way as Encode and Decode.
+	 */
+	private static final class Build extends RecursiveTask<Node> {
+		private static final long serialVersionUID = 1L;
+		private final int lo, hi;
+		private final boolean parallel;
+
+		Build(int lo, int hi, boolean parallel) {
+			this.lo = lo; this.hi = hi; this.parallel = parallel;
+		}
+
+		@Override
+		protected Node compute() {
+			if (hi - lo <= LEAF)
+				return new Node(product(lo, hi), null, null);
+			int m = (lo + hi) >>> 1;
+			Build left = new Build(lo, m, parallel);
+			Build right = new Build(m, hi, parallel);
+			Node l, r;
+			if (parallel && hi - lo > PARALLEL_LEAF) {
+				right.fork();
+				l = left.compute();
+				r = right.join();
+			} else {
+				l = left.compute();
+				r = right.compute();
+			}
+			return new Node(l.p.multiply(r.p), l, r);
+		}
+	}
+
+	/**
+	 * Writes the digits of x = V(lo, hi) into res, where res[n-1-k] = a[k].
+	 */
+	private static final class Decode extends RecursiveTask<Void> {
+		private static final long serialVersionUID = 1L;
+		private final BigInteger x;
+		private final Node node;
+		private final int lo, hi;
+		private final int[] res;
+		private final boolean parallel;
+
+		Decode(BigInteger x, Node node, int lo, int hi, int[] res, boolean parallel) {
+			this.x = x; this.node = node; this.lo = lo; this.hi = hi;
+			this.res = res; this.parallel = parallel;
+		}
+
+		@Override
+		protected Void compute() {
+			final int last = res.length - 1;
+			if (node.left == null) {
+				BigInteger v = x;
+				for (int k = lo; k < hi; k++) {
+					BigInteger[] qr = v.divideAndRemainder(BigInteger.valueOf(k + 1));
+					res[last - k] = qr[1].intValue();
+					v = qr[0];
+				}
+				return null;
+			}
+			int m = (lo + hi) >>> 1;
+			BigInteger[] qr = x.divideAndRemainder(node.left.p);
+			Decode left = new Decode(qr[1], node.left, lo, m, res, parallel);
+			Decode right = new Decode(qr[0], node.right, m, hi, res, parallel);
+			if (parallel && hi - lo > PARALLEL_LEAF) {
+				right.fork();
+				left.compute();
+				right.join();
+			} else {
+				left.compute();
+				right.compute();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * A BitField that can hold more than 2^31 bits.
+ * <p>The int methods of BitField still work on the first 2^31 bits, and size() is capped at
+ * Integer.MAX_VALUE. Use the long versions to go further.
+ * Implementations: BitFieldLong (heap), BitFieldDirect (off-heap), BitFieldMapped (file).
+ *
+ * @author drax
+ */
+public interface LargeBitField extends BitField {
+
+	/**
+	 * The number of bits in this BitField.
+	 * @return the size, not capped
+	 */
+	public long longSize();
+
+	/**
+	 * Sets the nth bit.
+	 * @param n bit number, starting at 0
+	 */
+	public void set(long n);
+
+	/**
+	 * Clears the nth bit.
+	 * @param n bit number, starting at 0
+	 */
+	public void clear(long n);
+
+	/**
+	 * For convenience, sets the nth bit to the given value.
+	 * @param n bit number, starting at 0
+	 * @param b value of the bit
+	 */
+	public default void set(long n, boolean b) {
+		if (b) set(n);
+		else clear(n);
+	}
+
+	/**
+	 * Gets the value of the nth bit.
+	 * @param n bit number, starting at 0
+	 * @return the value of that bit.
+	 */
+	public boolean get(long n);
+}
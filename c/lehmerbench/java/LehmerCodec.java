@@ -0,0 +1,122 @@
+/**
+ * A reusable Lehmer encoder/decoder.
+ * <p>Permutations.lehmer() and unlehmer() allocate a result array and a whole ToggleArray on every call.
+ * That's nothing for one permutation of 10M elements, but when ranking millions of small permutations,
+ * allocation and GC cost more than the encoding itself. A LehmerCodec is sized once, writes into arrays
+ * given by the caller, and never allocates after construction.
+ * <p>Up to 64 elements, the toggles fit in a single long: rank is one Long.bitCount, select is
+ * RankSelectBlocked.selectInWord, and there is nothing to reset.
+ * Above that, a ToggleArray with the BLOCKED layout is kept and lowered after each call, which costs
+ * O(size/64) (one Arrays.fill of its words and block counters).
+ * <p>A codec is not thread safe. Concurrent callers can each get their own with {@link #local(int)}.
+ *
+ * @see Permutations#lehmer(int[])
+ * @see Permutations#unlehmer(int[])
+ * @author drax
+ */
+public final class LehmerCodec {
+	private static final int WORD = 64;  // up to that size, the toggles are a single long
+
+	private static final ThreadLocal<LehmerCodec> LOCAL = new ThreadLocal<>();
+
+	private final int size;
+	private final ToggleArray ta;        // null when size <= WORD
+
+	/**
+	 * Creates a codec for permutations of up to size elements.
+	 * <p>Complexity: O(size)
+	 * @param size the biggest permutation size
+	 */
+	public LehmerCodec(int size) {
+		this.size = size;
+		ta = size > WORD ? new ToggleArray(size, RankSelect.Layout.BLOCKED) : null;
+	}
+
+	/**
+	 * The codec of the current thread, big enough for the given size.
+	 * It is created (or replaced by a bigger one) when needed, and reused otherwise.
+	 * @param size the permutation size
+	 * @return a codec only used by the current thread
+	 */
+	public static LehmerCodec local(int size) {
+		LehmerCodec codec = LOCAL.get();
+		if (codec == null || codec.size < size) {
+			codec = new LehmerCodec(size);
+			LOCAL.set(codec);
+		}
+		return codec;
+	}
+
+	/**
+	 * The biggest permutation size this codec handles.
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Computes the Lehmer code of perm into out.
+	 * <p>Complexity: O(n) up to 64 elements, O(n log n) above.
+	 * @param perm a permutation of [0, n-1], n <= size()
+	 * @param out receives the Lehmer code in out[0, n-1]
+	 * @return out
+	 */
+	public int[] encode(int[] perm, int[] out) {
+		final int n = check(perm.length);
+		if (n == 0) return out;
+		if (ta == null) {
+			long used = 0;
+			for (int i = 0; i < n - 1; i++) {
+				long bit = 1L << perm[i];
+				out[i] = perm[i] - Long.bitCount(used & (bit - 1));
+				used |= bit;
+			}
+		} else {
+			try {
+				for (int i = 0; i < n - 1; i++) {
+					int k = ta.numDLE(perm[i]);
+					ta.setUp(k);
+					out[i] = k;
+				}
+			} finally {
+				ta.allDown();        // even on invalid input, or the next calls would be wrong
+			}
+		}
+		out[n - 1] = 0;
+		return out;
+	}
+
+	/**
+	 * Rebuilds the permutation of a Lehmer code into out.
+	 * <p>Complexity: O(n) up to 64 elements, O(n log n) above.
+	 * @param lehmer a valid Lehmer code of n elements, n <= size()
+	 * @param out receives the permutation in out[0, n-1]
+	 * @return out
+	 */
+	public int[] decode(int[] lehmer, int[] out) {
+		final int n = check(lehmer.length);
+		if (ta == null) {
+			long used = 0;
+			for (int i = 0; i < n; i++) {
+				int v = RankSelectBlocked.selectInWord(~used, lehmer[i]);
+				out[i] = v;
+				used |= 1L << v;
+			}
+		} else {
+			try {
+				for (int i = 0; i < n; i++)
+					out[i] = ta.setUp(lehmer[i]);
+			} finally {
+				ta.allDown();
+			}
+		}
+		return out;
+	}
+
+	private int check(int n) {
+		if (n > size)
+			throw new IllegalArgumentException("Permutation of " + n + " elements, codec size is " + size);
+		return n;
+	}
+}
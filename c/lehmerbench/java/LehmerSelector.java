@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Picks the fastest Lehmer encoder and decoder for a given size, from a crossover table.
+ * <p>The table maps sizes to the best algorithm measured at that size. A permutation of n elements
+ * uses the entry of the smallest size >= n. Above the biggest size of the table, the O(n log n)
+ * ToggleArray always wins, so it's used without asking.
+ * <p>The crossovers depend on the machine (cache sizes, SIMD width, whether the Vector API is enabled)
+ * so the table is measured once on the host by calibrate() and saved to a properties file:
+ * <pre>
+ * java --add-modules jdk.incubator.vector Permutations calibrate
+ * </pre>
+ * Then instance() loads it from -Dlehmer.calibration=file (default: lehmer-calibration.properties in the
+ * user's home). Without that file, or if it was measured with the Vector API and it is not there anymore
+ * (or the other way around: the SIMD encoders were never timed), a built-in table is used instead.
+ *
+ * @see Permutations#encode(int[])
+ * @see Permutations#decode(int[])
+ * @author drax
+ */
+public final class LehmerSelector {
+	private static final int[] SIZES = { 8, 16, 32, 64, 128, 256, 512, 1000, 2000, 5000, 10_000 };
+	private static final long BUDGET = 20_000_000L;   // nanoseconds spent timing one algorithm at one size
+
+	/**
+	 * The Lehmer decoders.
+	 */
+	public enum Decoder {
+		TOGGLE_ARRAY, PERM_FROM_LEHMER, INVLEHMER;
+
+		/**
+		 * Rebuilds the permutation of a Lehmer code with this decoder.
+		 * @param lehmer The Lehmer code array.
+		 * @return The corresponding permutation array, the same for every decoder.
+		 */
+		public int[] unlehmer(int[] lehmer) {
+			switch (this) {
+				case PERM_FROM_LEHMER: return Permutations.permFromLehmer(lehmer);
+				case INVLEHMER:        return Permutations.invlehmer(lehmer);
+				default:               return Permutations.unlehmer(lehmer);
+			}
+		}
+	}
+
+	private static LehmerSelector instance;
+
+	private final TreeMap<Integer, LehmerStrategy> encoders;
+	private final TreeMap<Integer, Decoder> decoders;
+	private final boolean vectorized;   // whether the SIMD encoders really ran when this table was made
+
+	private LehmerSelector(TreeMap<Integer, LehmerStrategy> encoders, TreeMap<Integer, Decoder> decoders, boolean vectorized) {
+		this.encoders = encoders;
+		this.decoders = decoders;
+		this.vectorized = vectorized;
+	}
+
+	/**
+	 * The selector used by Permutations.encode() and decode(): the calibration file if there's
+	 * a usable one, the built-in table otherwise. Loaded once.
+	 * @return the shared selector
+	 */
+	public static synchronized LehmerSelector instance() {
+		if (instance == null) {
+			Path file = Paths.get(System.getProperty("lehmer.calibration",
+					Paths.get(System.getProperty("user.home"), "lehmer-calibration.properties").toString()));
+			LehmerSelector loaded = null;
+			if (Files.isRegularFile(file)) {
+				try {
+					loaded = load(file);
+				} catch (IOException | IllegalArgumentException e) {
+					System.err.println("Ignoring " + file + ": " + e);
+				}
+			}
+			boolean simd = LehmerStrategy.COUNT_VECTOR.isVectorized();
+			if (loaded != null && loaded.vectorized != simd) {
+				System.err.println("Ignoring " + file + ": measured " + (loaded.vectorized ? "with" : "without")
+						+ " the Vector API, which is " + (simd ? "enabled" : "disabled") + " now");
+				loaded = null;
+			}
+			if (loaded == null)
+				loaded = defaults();
+			instance = loaded;
+		}
+		return instance;
+	}
+
+	/**
+	 * The built-in table, measured on a single core AVX-512 machine.
+	 * Without the Vector API, nothing beats the ToggleArray for long.
+	 * @return a selector that doesn't need any calibration
+	 */
+	public static LehmerSelector defaults() {
+		TreeMap<Integer, LehmerStrategy> enc = new TreeMap<>();
+		TreeMap<Integer, Decoder> dec = new TreeMap<>();
+		boolean simd = LehmerStrategy.COUNT_VECTOR.isVectorized();
+		if (simd) {
+			enc.put(32, LehmerStrategy.COUNT);
+			enc.put(1000, LehmerStrategy.DECREMENT_VECTOR);
+			enc.put(2000, LehmerStrategy.COUNT_VECTOR);
+			dec.put(64, Decoder.PERM_FROM_LEHMER);
+		} else {
+			enc.put(64, LehmerStrategy.COUNT);
+			dec.put(32, Decoder.PERM_FROM_LEHMER);
+		}
+		return new LehmerSelector(enc, dec, simd);
+	}
+
+	/**
+	 * Measures every encoder and decoder on this machine, at sizes from 8 to 10k.
+	 * <p>Each one gets about 20 ms per size (after a warmup of the same length), so this takes
+	 * a few seconds.
+	 * @return a selector using the best algorithm measured at each size
+	 */
+	public static LehmerSelector calibrate() {
+		TreeMap<Integer, LehmerStrategy> enc = new TreeMap<>();
+		TreeMap<Integer, Decoder> dec = new TreeMap<>();
+		for (int n : SIZES) {
+			int[] perm = Permutations.getPermutation(n);
+			Permutations.shuffle(perm);
+			int[] lehmer = Permutations.lehmer(perm);
+			double best = Double.MAX_VALUE;
+			for (LehmerStrategy s : LehmerStrategy.values()) {
+				if (s.name().endsWith("_VECTOR") && !s.isVectorized())
+					continue;  // that's only the scalar fallback, already measured
+				double t = time(() -> s.lehmer(perm));
+				if (t < best) {
+					best = t;
+					enc.put(n, s);
+				}
+			}
+			best = Double.MAX_VALUE;
+			for (Decoder d : Decoder.values()) {
+				double t = time(() -> d.unlehmer(lehmer));
+				if (t < best) {
+					best = t;
+					dec.put(n, d);
+				}
+			}
+		}
+		return new LehmerSelector(enc, dec, LehmerStrategy.COUNT_VECTOR.isVectorized());
+	}
+
+	/**
+	 * Average duration of one call, in nanoseconds.
+	 */
+	private static double time(Runnable r) {
+		double avg = 0;
+		for (int run = 0; run < 2; run++) {  // the first run is the warmup
+			long start = System.nanoTime();
+			long calls = 0;
+			long elapsed;
+			do {
+				r.run();
+				calls++;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < BUDGET);
+			avg = (double) elapsed / calls;
+		}
+		return avg;
+	}
+
+	/**
+	 * Reads a table saved by save().
+	 * @param file the properties file
+	 * @return the selector
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if an algorithm or a size is unknown
+	 */
+	public static LehmerSelector load(Path file) throws IOException {
+		Properties p = new Properties();
+		try (Reader in = Files.newBufferedReader(file)) {
+			p.load(in);
+		}
+		TreeMap<Integer, LehmerStrategy> enc = new TreeMap<>();
+		TreeMap<Integer, Decoder> dec = new TreeMap<>();
+		for (String key : p.stringPropertyNames()) {
+			String value = p.getProperty(key).trim().toUpperCase();
+			if (key.startsWith("encode."))
+				enc.put(Integer.parseInt(key.substring(7)), LehmerStrategy.valueOf(value));
+			else if (key.startsWith("decode."))
+				dec.put(Integer.parseInt(key.substring(7)), Decoder.valueOf(value));
+		}
+		return new LehmerSelector(enc, dec, Boolean.parseBoolean(p.getProperty("vectorized")));
+	}
+
+	/**
+	 * Saves the table, one line per size and direction (i.e. encode.1000=COUNT_VECTOR).
+	 * @param file the properties file (replaced)
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(Path file) throws IOException {
+		Properties p = new Properties();
+		p.setProperty("vectorized", Boolean.toString(vectorized));
+		for (Map.Entry<Integer, LehmerStrategy> e : encoders.entrySet())
+			p.setProperty("encode." + e.getKey(), e.getValue().name());
+		for (Map.Entry<Integer, Decoder> e : decoders.entrySet())
+			p.setProperty("decode." + e.getKey(), e.getValue().name());
+		try (Writer out = Files.newBufferedWriter(file)) {
+			p.store(out, "Lehmer crossover table, made by LehmerSelector.calibrate()");
+		}
+	}
+
+	/**
+	 * The encoder picked for permutations of n elements.
+	 * @param n the size
+	 * @return the fastest encoder measured for that size
+	 */
+	public LehmerStrategy encoder(int n) {
+		Map.Entry<Integer, LehmerStrategy> e = encoders.ceilingEntry(n);
+		return e != null ? e.getValue() : LehmerStrategy.TOGGLE_ARRAY;
+	}
+
+	/**
+	 * The decoder picked for permutations of n elements.
+	 * @param n the size
+	 * @return the fastest decoder measured for that size
+	 */
+	public Decoder decoder(int n) {
+		Map.Entry<Integer, Decoder> e = decoders.ceilingEntry(n);
+		return e != null ? e.getValue() : Decoder.TOGGLE_ARRAY;
+	}
+
+	/**
+	 * Computes the Lehmer code of perm with the encoder picked for its size.
+	 * @param perm The permutation array.
+	 * @return The Lehmer code array.
+	 */
+	public int[] encode(int[] perm) {
+		return encoder(perm.length).lehmer(perm);
+	}
+
+	/**
+	 * Rebuilds the permutation of a Lehmer code with the decoder picked for its size.
+	 * @param lehmer The Lehmer code array.
+	 * @return The corresponding permutation array.
+	 */
+	public int[] decode(int[] lehmer) {
+		return decoder(lehmer.length).unlehmer(lehmer);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int n : encoders.keySet())
+			sb.append(String.format("n <= %-6d encode %s%n", n, encoders.get(n)));
+		sb.append(String.format("above      encode %s%n", LehmerStrategy.TOGGLE_ARRAY));
+		for (int n : decoders.keySet())
+			sb.append(String.format("n <= %-6d decode %s%n", n, decoders.get(n)));
+		sb.append(String.format("above      decode %s%n", Decoder.TOGGLE_ARRAY));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * The ways to compute a Lehmer code, selectable at runtime.
+ * <p>TOGGLE_ARRAY is the O(n log n) lehmer(). The others are the O(n²) lehmer1() (decrement the bigger
+ * elements to the right) and lehmer2() (count the smaller elements to the right), in scalar and in
+ * SIMD form. The SIMD ones compare a broadcast pivot against whole vectors of the permutation,
+ * which is a lot of work but no branch and no cache miss: for a few thousand elements they can
+ * beat the ToggleArray (see "java Permutations strategies" and the jmh StrategyBench for the crossover).
+ *
+ * <p>The SIMD kernels use jdk.incubator.vector, which javac and java only see with
+ * --add-modules jdk.incubator.vector. So they live apart in vector/LehmerVector.java and are loaded
+ * by name. When that class or the module is missing, the VECTOR strategies fall back to their scalar
+ * version (see isVectorized()).
+ * <p>The default one can be picked with -Dlehmer=count_vector (or toggle_array, decrement...)
+ *
+ * @author drax
+ */
+public enum LehmerStrategy {
+	TOGGLE_ARRAY, DECREMENT, COUNT, DECREMENT_VECTOR, COUNT_VECTOR;
+
+	public static final LehmerStrategy DEFAULT = fromProperty();
+
+	/**
+	 * The strategy named by -Dlehmer, TOGGLE_ARRAY when it is missing or names no strategy.
+	 */
+	private static LehmerStrategy fromProperty() {
+		String name = System.getProperty("lehmer", "toggle_array");
+		try {
+			return valueOf(name.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unknown -Dlehmer=" + name + ", expected one of "
+					+ java.util.Arrays.toString(values()).toLowerCase() + ": using toggle_array");
+			return TOGGLE_ARRAY;
+		}
+	}
+
+	/**
+	 * The SIMD kernels, implemented by vector/LehmerVector.java.
+	 */
+	interface Kernels {
+		int[] decrement(int[] perm);
+		int[] count(int[] perm);
+	}
+
+	private static final Kernels VECTOR = loadVector();
+
+	private static Kernels loadVector() {
+		try {
+			return (Kernels) Class.forName("LehmerVector").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;  // not compiled, or run without --add-modules jdk.incubator.vector
+		}
+	}
+
+	/**
+	 * Tells if this strategy really runs SIMD code (false for the scalar ones and for the fallbacks).
+	 * @return true if vectorized
+	 */
+	public boolean isVectorized() {
+		return VECTOR != null && (this == DECREMENT_VECTOR || this == COUNT_VECTOR);
+	}
+
+	/**
+	 * Computes the Lehmer code of perm with this strategy.
+	 * @param perm The permutation array.
+	 * @return The Lehmer code array, the same for every strategy.
+	 */
+	public int[] lehmer(int[] perm) {
+		switch (this) {
+			case DECREMENT:        return Permutations.lehmer1(perm);
+			case COUNT:            return Permutations.lehmer2(perm);
+			case DECREMENT_VECTOR: return VECTOR != null ? VECTOR.decrement(perm) : Permutations.lehmer1(perm);
+			case COUNT_VECTOR:     return VECTOR != null ? VECTOR.count(perm) : Permutations.lehmer2(perm);
+			default:               return Permutations.lehmer(perm);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lehmer code of permutations too big for the heap.
+ * <p>The permutation and its Lehmer code are files of little-endian ints, which are mapped in
+ * windows and processed as a stream, in order. The only state is the ToggleArray, which lives
+ * off-heap in a RankSelectDirect (about 135 MB per billion elements).
+ * So a 2 billion elements permutation (8 GB on disk, 8 GB for its code) needs no heap at all,
+ * and can be processed with the default -Xmx.
+ * <p>Usage: java LehmerStream lehmer|unlehmer input output
+ *
+ * @see Permutations#lehmer(int[], ToggleArray)
+ * @author drax
+ */
+public class LehmerStream {
+	private static final int WINDOW = 1 << 27;   // ints per mapped window (512 MB)
+
+	/**
+	 * Computes the Lehmer code of the permutation stored in permFile and writes it to lehmerFile.
+	 * @param permFile a permutation of [0, n-1] as n little-endian ints (n < 2^31)
+	 * @param lehmerFile the output, created or overwritten
+	 * @throws IOException if a file can't be read, written or mapped
+	 */
+	public static void lehmer(Path permFile, Path lehmerFile) throws IOException {
+		process(permFile, lehmerFile, true, WINDOW);
+	}
+
+	/**
+	 * Rebuilds the permutation from the Lehmer code stored in lehmerFile and writes it to permFile.
+	 * @param lehmerFile a Lehmer code as n little-endian ints (n < 2^31)
+	 * @param permFile the output, created or overwritten
+	 * @throws IOException if a file can't be read, written or mapped
+	 */
+	public static void unlehmer(Path lehmerFile, Path permFile) throws IOException {
+		process(lehmerFile, permFile, false, WINDOW);
+	}
+
+	/**
+	 * Streams input to output, window ints at a time (WINDOW, smaller in tests to cross window boundaries).
+	 */
+	static void process(Path input, Path output, boolean encode, int window) throws IOException {
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long bytes = in.size();
+			if ((bytes & 3) != 0 || (bytes >> 2) > Integer.MAX_VALUE)
+				throw new IOException(input + ": not a valid array of ints (" + bytes + " bytes)");
+			final int len = (int) (bytes >> 2);
+			if (len == 0) return;
+			ToggleArray ta = new ToggleArray(new RankSelectDirect(len));
+			for (long start = 0; start < len; start += window) {
+				int count = (int) Math.min(window, len - start);
+				IntBuffer src = in.map(MapMode.READ_ONLY, start << 2, (long) count << 2)
+						.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				MappedByteBuffer dstMap = out.map(MapMode.READ_WRITE, start << 2, (long) count << 2);
+				IntBuffer dst = dstMap.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				if (encode) {
+					for (int i = 0; i < count; i++) {
+						int n = ta.numDLE(src.get(i));
+						ta.setUp(n);
+						dst.put(i, n);
+					}
+				} else {
+					for (int i = 0; i < count; i++)
+						dst.put(i, ta.setUp(src.get(i)));
+				}
+				dstMap.force();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3 || !(args[0].equals("lehmer") || args[0].equals("unlehmer"))) {
+			System.out.println("Usage: java LehmerStream lehmer|unlehmer input output");
+			return;
+		}
+		long start = System.currentTimeMillis();
+		if (args[0].equals("lehmer")) lehmer(Path.of(args[1]), Path.of(args[2]));
+		else unlehmer(Path.of(args[1]), Path.of(args[2]));
+		System.out.println("Done in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
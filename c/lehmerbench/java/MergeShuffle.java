@@ -0,0 +1,121 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel random permutations: MergeShuffle (Bacher, Bodini, Hollender, Lumbroso, 2015).
+ * <p>The array is cut in halves down to blocks that are shuffled with Fisher-Yates, in parallel.
+ * Two shuffled halves are then merged in place: while both halves have elements left, a random bit
+ * tells whether the next slot keeps the left element or swaps in the right one. When one half runs out,
+ * each remaining element is swapped with a uniformly chosen earlier slot of the merged range
+ * (one Fisher-Yates step each). If both halves are uniform, so is the merge.
+ *
+ * <p>Deterministic for a given seed, whatever the pool and its number of threads: the shape of the
+ * recursion only depends on the size, and each task gets its own SplittableRandom, split from its
+ * parent's one before anything is forked. The parent then uses its own one for the merge.
+ * <p>When the array is also to be filled with the identity, the blocks do both in a single pass
+ * ("inside-out" Fisher-Yates), so the identity is never written on its own.
+ *
+ * @see Permutations#randomPermutation(int, long)
+ * @see Permutations#shuffleParallel(int[], long)
+ * @author drax
+ */
+final class MergeShuffle {
+	static final int LEAF = 1 << 20;   // blocks of that many elements are shuffled with Fisher-Yates
+
+	private MergeShuffle() {}
+
+	/**
+	 * Shuffles a[] in place.
+	 * @param a the array, filled with the identity first when identity is true
+	 * @param identity fill a with [0, n-1] while shuffling (its content is ignored)
+	 * @param seed the seed, the same seed always gives the same result
+	 * @param leaf size of the Fisher-Yates blocks (LEAF, smaller in tests to exercise the merges)
+	 * @param pool the pool running the tasks, null to stay on the current thread
+	 */
+	static void shuffle(int[] a, boolean identity, long seed, int leaf, ForkJoinPool pool) {
+		Shuffle task = new Shuffle(a, identity, new SplittableRandom(seed), 0, a.length, Math.max(1, leaf));
+		if (pool != null) pool.invoke(task);
+		else task.compute();
+	}
+
+	/**
+	 * Fisher-Yates on a[lo, hi[, or inside-out Fisher-Yates filling it with [lo, hi[.
+	 */
+	private static void fisherYates(int[] a, boolean identity, SplittableRandom rng, int lo, int hi) {
+		if (identity) {
+			for (int i = lo; i < hi; i++) {
+				int j = lo + rng.nextInt(i - lo + 1);
+				a[i] = a[j];
+				a[j] = i;
+			}
+		} else {
+			for (int i = hi - 1; i > lo; i--) {
+				int j = lo + rng.nextInt(i - lo + 1);
+				int tmp = a[i];
+				a[i] = a[j];
+				a[j] = tmp;
+			}
+		}
+	}
+
+	/**
+	 * Merges the shuffled a[lo, mid[ and a[mid, hi[ into a shuffled a[lo, hi[.
+	 */
+	private static void merge(int[] a, SplittableRandom rng, int lo, int mid, int hi) {
+		int i = lo, j = mid;
+		long bits = 0;
+		int left = 0;                   // random bits left in bits
+		while (true) {
+			if (left == 0) {
+				bits = rng.nextLong();
+				left = 64;
+			}
+			boolean right = (bits & 1) != 0;
+			bits >>>= 1;
+			left--;
+			if (right) {
+				if (j == hi) break;
+				int tmp = a[i];
+				a[i] = a[j];
+				a[j++] = tmp;
+			} else if (i == j) {
+				break;
+			}
+			i++;
+		}
+		for (; i < hi; i++) {
+			int m = lo + rng.nextInt(i - lo + 1);
+			int tmp = a[i];
+			a[i] = a[m];
+			a[m] = tmp;
+		}
+	}
+
+	private static final class Shuffle extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] a;
+		private final boolean identity;
+		private final SplittableRandom rng;
+		private final int lo, hi, leaf;
+
+		Shuffle(int[] a, boolean identity, SplittableRandom rng, int lo, int hi, int leaf) {
+			this.a = a; this.identity = identity; this.rng = rng;
+			this.lo = lo; this.hi = hi; this.leaf = leaf;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= leaf) {
+				fisherYates(a, identity, rng, lo, hi);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			Shuffle l = new Shuffle(a, identity, rng.split(), lo, mid, leaf);
+			Shuffle r = new Shuffle(a, identity, rng.split(), mid, hi, leaf);
+			if (getPool() != null) invokeAll(l, r);
+			else { l.compute(); r.compute(); }
+			merge(a, rng, lo, mid, hi);
+		}
+	}
+}
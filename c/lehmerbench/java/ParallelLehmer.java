@@ -0,0 +1,241 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel Lehmer code and its inverse.
+ *
+ * <p>Encoding uses a ForkJoin merge sort that counts inversions.
+ * <p>lehmer[i] is the number of elements to the right of i that are smaller than perm[i].
+ * When merging a sorted left half L with a sorted right half R, a left element that moves
+ * from index i (in the source) to index o (in the destination) has been passed by exactly
+ * o - i elements of R, all of them smaller and to its right. Summing that over every merge
+ * level gives the Lehmer code.
+ * <p>Both the sort and the merges are split in tasks: merges are cut in two independent
+ * merges using a binary search, so the top levels don't run on a single core.
+ * Counts are indexed by value, so each task only ever writes to the counts of its own
+ * elements and there's no need for any synchronization.
+ * <p>Complexity: O(n log n) work, O(log³ n) span.
+ *
+ * <p>Decoding splits the values instead of the positions. Reading the Lehmer code from the left,
+ * perm[i] is the lehmer[i]-th smallest value not used yet. Among the values still available,
+ * the small ones (in the lower half [0, h[) come first, so perm[i] is small if and only if
+ * lehmer[i] < h - (number of small values already used). That's one cheap sequential scan
+ * which splits the code in two independent subsequences:
+ * - the small elements keep their code (everything smaller than them is small too)
+ * - the large elements lose the small values still available (h - small values used so far)
+ * Each subsequence is then decoded the same way, in parallel, down to blocks that fit in cache
+ * where a ToggleArray finishes the job.
+ * <p>Complexity: O(n log n) work in streaming scans, O(n) span.
+ *
+ * @see Permutations#lehmerParallel(int[])
+ * @see Permutations#unlehmerParallel(int[])
+ * @author drax
+ */
+final class ParallelLehmer {
+	private static final int SORT_LEAF = 1 << 13;   // below that, sort sequentially
+	private static final int MERGE_LEAF = 1 << 13;  // below that, merge sequentially
+	private static final int INSERTION = 32;        // below that, insertion sort
+	private static final int DECODE_LEAF = 1 << 16; // below that, decode with a ToggleArray
+
+	private ParallelLehmer() {}
+
+	/**
+	 * Computes the Lehmer code of perm in parallel.
+	 * @param perm a permutation of [0, n-1]
+	 * @param pool the pool running the tasks
+	 * @return the Lehmer code, same as Permutations.lehmer(perm)
+	 */
+	static int[] lehmer(int[] perm, ForkJoinPool pool) {
+		final int n = perm.length;
+		int[] a = perm.clone();
+		int[] b = new int[n];
+		int[] cnt = new int[n];       // cnt[v] = number of smaller elements to the right of value v
+		pool.invoke(new Sort(a, b, cnt, 0, n, false));
+		for (int i = 0; i < n; i++)   // reuse b, the sorted values are not needed
+			b[i] = cnt[perm[i]];
+		return b;
+	}
+
+	/**
+	 * Rebuilds the permutation from its Lehmer code in parallel.
+	 * @param lehmer a valid Lehmer code (lehmer[i] < n - i), not modified
+	 * @param pool the pool running the tasks
+	 * @return the permutation, same as Permutations.unlehmer(lehmer)
+	 */
+	static int[] unlehmer(int[] lehmer, ForkJoinPool pool) {
+		final int n = lehmer.length;
+		int[] perm = new int[n];
+		int[] pos = new int[n];
+		for (int i = 0; i < n; i++) pos[i] = i;
+		pool.invoke(new Decode(pos, lehmer.clone(), new int[n], new int[n], perm, 0, n, 0));
+		return perm;
+	}
+
+	/**
+	 * Sequential merge sort of a[lo, hi[ with counts, using b as a scratch buffer.
+	 * The result is in a.
+	 */
+	private static void sortSeq(int[] a, int[] b, int[] cnt, int lo, int hi) {
+		if (hi - lo <= INSERTION) {
+			for (int i = lo + 1; i < hi; i++) {
+				int x = a[i];
+				int j = i;
+				while (j > lo && a[j - 1] > x) {  // every element passed by x is bigger and to its left
+					cnt[a[j - 1]]++;
+					a[j] = a[j - 1];
+					j--;
+				}
+				a[j] = x;
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		sortSeq(a, b, cnt, lo, mid);
+		sortSeq(a, b, cnt, mid, hi);
+		mergeSeq(a, b, cnt, lo, mid, mid, hi, lo);
+		System.arraycopy(b, lo, a, lo, hi - lo);
+	}
+
+	/**
+	 * Merges src[l1, h1[ (left elements) and src[l2, h2[ (right elements) into dst[out, ...[
+	 * and counts for each left element how many right elements passed it.
+	 */
+	private static void mergeSeq(int[] src, int[] dst, int[] cnt, int l1, int h1, int l2, int h2, int out) {
+		int i = l1, j = l2, o = out;
+		while (i < h1 && j < h2) {
+			if (src[i] < src[j]) {
+				cnt[src[i]] += o - i;
+				dst[o++] = src[i++];
+			} else {
+				dst[o++] = src[j++];
+			}
+		}
+		while (i < h1) {
+			cnt[src[i]] += o - i;
+			dst[o++] = src[i++];
+		}
+		while (j < h2)
+			dst[o++] = src[j++];
+	}
+
+	/**
+	 * First index in src[lo, hi[ (sorted) holding a value >= x.
+	 */
+	private static int lowerBound(int[] src, int lo, int hi, int x) {
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (src[m] < x) lo = m + 1;
+			else hi = m;
+		}
+		return lo;
+	}
+
+	/**
+	 * Sorts the values of a[lo, hi[ with counts. The result is in b if toB, in a otherwise.
+	 * Both arrays are used as scratch.
+	 */
+	private static final class Sort extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] a, b, cnt;
+		private final int lo, hi;
+		private final boolean toB;
+
+		Sort(int[] a, int[] b, int[] cnt, int lo, int hi, boolean toB) {
+			this.a = a; this.b = b; this.cnt = cnt;
+			this.lo = lo; this.hi = hi; this.toB = toB;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= SORT_LEAF) {
+				sortSeq(a, b, cnt, lo, hi);
+				if (toB) System.arraycopy(a, lo, b, lo, hi - lo);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Sort(a, b, cnt, lo, mid, !toB), new Sort(a, b, cnt, mid, hi, !toB));
+			int[] src = toB ? a : b;
+			int[] dst = toB ? b : a;
+			new Merge(src, dst, cnt, lo, mid, mid, hi, lo).compute();
+		}
+	}
+
+	/**
+	 * Parallel merge of src[l1, h1[ (left elements) and src[l2, h2[ (right elements) into dst[out, ...[.
+	 * The bigger side is cut in the middle at value x, the other one is cut where x would be inserted.
+	 * Everything before the cuts is smaller than everything after, so both parts are independent merges.
+	 */
+	private static final class Merge extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] src, dst, cnt;
+		private final int l1, h1, l2, h2, out;
+
+		Merge(int[] src, int[] dst, int[] cnt, int l1, int h1, int l2, int h2, int out) {
+			this.src = src; this.dst = dst; this.cnt = cnt;
+			this.l1 = l1; this.h1 = h1; this.l2 = l2; this.h2 = h2; this.out = out;
+		}
+
+		@Override
+		protected void compute() {
+			int len1 = h1 - l1, len2 = h2 - l2;
+			if (len1 + len2 <= MERGE_LEAF) {
+				mergeSeq(src, dst, cnt, l1, h1, l2, h2, out);
+				return;
+			}
+			int p, q;
+			if (len1 >= len2) {
+				p = (l1 + h1) >>> 1;
+				q = lowerBound(src, l2, h2, src[p]);
+			} else {
+				q = (l2 + h2) >>> 1;
+				p = lowerBound(src, l1, h1, src[q]);
+			}
+			int out2 = out + (p - l1) + (q - l2);
+			invokeAll(new Merge(src, dst, cnt, l1, p, l2, q, out),
+					new Merge(src, dst, cnt, p, h1, q, h2, out2));
+		}
+	}
+
+	/**
+	 * Decodes the subsequence stored in pos[lo, hi[ and code[lo, hi[ (positions in increasing order
+	 * and codes relative to that subsequence) knowing that its values are [base, base + hi - lo[.
+	 * The split goes into pos2 and code2, which then become the source of the children.
+	 */
+	private static final class Decode extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] pos, code, pos2, code2, perm;
+		private final int lo, hi, base;
+
+		Decode(int[] pos, int[] code, int[] pos2, int[] code2, int[] perm, int lo, int hi, int base) {
+			this.pos = pos; this.code = code; this.pos2 = pos2; this.code2 = code2; this.perm = perm;
+			this.lo = lo; this.hi = hi; this.base = base;
+		}
+
+		@Override
+		protected void compute() {
+			final int len = hi - lo;
+			if (len <= DECODE_LEAF) {
+				if (len == 0) return;
+				ToggleArray ta = new ToggleArray(len, RankSelect.Layout.BLOCKED);
+				for (int k = lo; k < hi; k++)
+					perm[pos[k]] = base + ta.setUp(code[k]);
+				return;
+			}
+			final int h = len >>> 1;
+			int small = lo, large = lo + h;    // next free slot of each half
+			for (int k = lo; k < hi; k++) {
+				int c = code[k];
+				int free = h - (small - lo);   // small values not used yet
+				if (c < free) {
+					pos2[small] = pos[k];
+					code2[small++] = c;
+				} else {
+					pos2[large] = pos[k];
+					code2[large++] = c - free;
+				}
+			}
+			invokeAll(new Decode(pos2, code2, pos, code, perm, lo, lo + h, base),
+					new Decode(pos2, code2, pos, code, perm, lo + h, hi, base + h));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parity of a permutation from its number of cycles: a cycle of length L is L-1 transpositions,
+ * so the parity of p is the one of n - (number of cycles). Counting the cycles only needs
+ * a visited bitmap, nothing is stored per cycle.
+ *
+ * <p>The parallel version cuts the indices in chunks. Each task walks the cycles from the
+ * unvisited indices of its chunk, claiming every element with an atomic set (BitFieldAtomic.trySet).
+ * A walk stops when it reaches an element claimed before:
+ * - its own start: the walk was a whole cycle, which is counted right away
+ * - anything else: that element is necessarily the start of another walk (all the other elements
+ *   of a walk have their predecessor in the same walk, and each element has one predecessor).
+ * So every walk is a segment of a cycle, linked to the segment that follows it.
+ * The open segments (start, start of the next segment) form a small permutation of their own,
+ * whose cycles are exactly the remaining cycles of p. They are counted sequentially at the end.
+ *
+ * @see Permutations#parity(int[])
+ * @see Permutations#parityParallel(int[])
+ * @author drax
+ */
+final class Parity {
+	private static final int LEAF = 1 << 16;   // indices per task
+
+	private Parity() {}
+
+	/**
+	 * Sequential parity.
+	 * @param p a permutation
+	 * @return 0 if p is even, 1 if it's odd
+	 */
+	static int parity(int[] p) {
+		final int n = p.length;
+		BitField visited = new BitFieldDrax(n);
+		int cycles = 0;
+		for (int i = visited.nextClearBit(0); i < n; i = visited.nextClearBit(i + 1)) {
+			int j = i;
+			do {
+				visited.set(j);
+			} while ((j = p[j]) != i);
+			cycles++;
+		}
+		return (n - cycles) & 1;
+	}
+
+	/**
+	 * Parallel parity.
+	 * @param p a permutation
+	 * @param pool the pool walking the chunks
+	 * @return 0 if p is even, 1 if it's odd
+	 */
+	static int parity(int[] p, ForkJoinPool pool) {
+		final int n = p.length;
+		if (n <= LEAF) return parity(p);
+		Segments s = pool.invoke(new Walk(p, new BitFieldAtomic(n), 0, n));
+		// link of each open segment, as an index in the sorted list of segments
+		long[] links = Arrays.copyOf(s.links, s.count);
+		Arrays.sort(links);                          // by start (high 32 bits)
+		int[] starts = new int[s.count];
+		for (int k = 0; k < s.count; k++)
+			starts[k] = (int) (links[k] >>> 32);
+		long cycles = s.closed;
+		BitField visited = new BitFieldDrax(s.count);
+		for (int k = visited.nextClearBit(0); k < s.count; k = visited.nextClearBit(k + 1)) {
+			int j = k;
+			do {
+				visited.set(j);
+				j = Arrays.binarySearch(starts, (int) links[j]);
+			} while (j != k);
+			cycles++;
+		}
+		return (int) ((n - cycles) & 1);
+	}
+
+	/**
+	 * The result of a task: the number of whole cycles it walked, and its open segments,
+	 * each one packed in a long: start << 32 | start of the next segment.
+	 */
+	private static final class Segments {
+		long closed;
+		long[] links = new long[8];
+		int count;
+
+		void add(int start, int next) {
+			if (count == links.length)
+				links = Arrays.copyOf(links, count << 1);
+			links[count++] = (long) start << 32 | next;
+		}
+
+		Segments merge(Segments other) {
+			closed += other.closed;
+			for (int k = 0; k < other.count; k++) {
+				if (count == links.length)
+					links = Arrays.copyOf(links, Math.max(count << 1, count + other.count));
+				links[count++] = other.links[k];
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Walks the cycles starting in [lo, hi[.
+	 */
+	private static final class Walk extends RecursiveTask<Segments> {
+		private static final long serialVersionUID = 1L;
+		private final int[] p;
+		private final BitFieldAtomic visited;
+		private final int lo, hi;
+
+		Walk(int[] p, BitFieldAtomic visited, int lo, int hi) {
+			this.p = p; this.visited = visited; this.lo = lo; this.hi = hi;
+		}
+
+		@Override
+		protected Segments compute() {
+			if (hi - lo <= LEAF) {
+				Segments s = new Segments();
+				for (int i = visited.nextClearBit(lo); i < hi; i = visited.nextClearBit(i + 1)) {
+					if (!visited.trySet(i)) continue;    // another walk got there first
+					int j = p[i];
+					while (j != i && visited.trySet(j))
+						j = p[j];
+					if (j == i) s.closed++;
+					else s.add(i, j);
+				}
+				return s;
+			}
+			int mid = (lo + hi) >>> 1;
+			Walk right = new Walk(p, visited, mid, hi);
+			right.fork();
+			Segments left = new Walk(p, visited, lo, mid).compute();
+			return left.merge(right.join());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Enumerates permutations in lexicographical order, by rank ranges split across a ForkJoinPool.
+ * <p>The rank range [from, to[ is cut in halves down to chunks of CHUNK permutations. Each chunk starts
+ * from Permutations.unrank64(first rank of the chunk) and then steps with nextPermutation(), which is
+ * O(1) amortized. Permutations are handed to the callback in batches: the batch array holds
+ * count permutations of n elements back to back, and perms[k*n, (k+1)*n[ has rank firstRank + k.
+ * <p>The batch array belongs to the chunk and is overwritten by the next batch, so the callback must copy
+ * what it keeps. With a pool, the callback is called from several threads at the same time, and batches
+ * don't come in rank order.
+ * <p>n is limited to 20 (ranks are longs), which is already far more than can be enumerated.
+ *
+ * @see Permutations#nextPermutation(int[])
+ * @see Permutations#unrank64(long, int, int[])
+ * @author drax
+ */
+public final class PermutationEnumerator {
+	static final long CHUNK = 1 << 20;         // permutations per task
+	public static final int BATCH = 1024;      // default number of permutations per callback
+
+	/**
+	 * Receives the permutations.
+	 */
+	@FunctionalInterface
+	public interface BatchConsumer {
+
+		/**
+		 * Called with consecutive permutations (in lexicographical order).
+		 * @param firstRank the rank of the first permutation of the batch
+		 * @param perms count permutations of n elements, back to back (only valid during the call)
+		 * @param count the number of permutations in this batch
+		 */
+		public void accept(long firstRank, int[] perms, int count);
+	}
+
+	private PermutationEnumerator() {}
+
+	/**
+	 * Enumerates all n! permutations of n elements on the common ForkJoinPool, in batches of BATCH.
+	 * @param n the size, 0 <= n <= 20
+	 * @param consumer the callback, called concurrently
+	 */
+	public static void forEach(int n, BatchConsumer consumer) {
+		forRange(n, 0, factorial(n), BATCH, consumer, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Enumerates the permutations of n elements with a rank in [from, to[.
+	 * @param n the size, 0 <= n <= 20
+	 * @param from the first rank (inclusive)
+	 * @param to the last rank (exclusive), <= n!
+	 * @param batch the maximum number of permutations per callback
+	 * @param consumer the callback, called concurrently when there's a pool
+	 * @param pool the pool running the chunks, null to stay on the current thread
+	 */
+	public static void forRange(int n, long from, long to, int batch, BatchConsumer consumer, ForkJoinPool pool) {
+		if (from < 0 || to > factorial(n) || from > to)
+			throw new IllegalArgumentException("Range [" + from + ", " + to + "[ not in [0, " + n + "!]");
+		if (batch < 1)
+			throw new IllegalArgumentException("batch must be positive, got " + batch);
+		Chunk task = new Chunk(n, from, to, batch, consumer);
+		if (pool != null) pool.invoke(task);
+		else task.compute();
+	}
+
+	/**
+	 * n!, checking that it fits in a long.
+	 */
+	static long factorial(int n) {
+		if (n < 0 || n > 20)
+			throw new IllegalArgumentException("Enumeration needs 0 <= n <= 20, got " + n);
+		long f = 1;
+		for (int i = 2; i <= n; i++)
+			f *= i;
+		return f;
+	}
+
+	private static final class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int n, batch;
+		private final long from, to;
+		private final BatchConsumer consumer;
+
+		Chunk(int n, long from, long to, int batch, BatchConsumer consumer) {
+			this.n = n; this.from = from; this.to = to;
+			this.batch = batch; this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK) {
+				enumerate();
+				return;
+			}
+			long mid = (from + to) >>> 1;
+			Chunk left = new Chunk(n, from, mid, batch, consumer);
+			Chunk right = new Chunk(n, mid, to, batch, consumer);
+			if (getPool() != null) invokeAll(left, right);
+			else { left.compute(); right.compute(); }
+		}
+
+		private void enumerate() {
+			if (from == to) return;
+			int size = (int) Math.min(batch, to - from);
+			int[] perms = new int[size * n];
+			int[] perm = Permutations.unrank64(from, n, new int[n]);
+			long rank = from;
+			while (rank < to) {
+				int count = (int) Math.min(size, to - rank);
+				for (int k = 0, off = 0; k < count; k++, off += n) {
+					System.arraycopy(perm, 0, perms, off, n);
+					if (n != 0) Permutations.nextPermutation(perm);
+				}
+				consumer.accept(rank, perms, count);
+				rank += count;
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Composition, inverse and power of permutations, sequential or split in chunks on a ForkJoinPool.
+ * <p>compose and inverse are one gather / scatter per element, so every chunk of indices is independent.
+ * <p>power(p, k) never applies p k times. With the cycles of p (see Cycles), p^k moves each element
+ * k mod L steps forward in its cycle of length L:
+ *   p^k(e[j]) = e[(j + k) mod L]   where e = (i, p[i], p[p[i]]...) is the cycle.
+ * That's O(n) whatever k is (negative k included, that's a power of the inverse).
+ * The cycles are found sequentially, then the elements array of the Cycles is cut in chunks,
+ * even in the middle of a cycle (a random permutation has one cycle of more than half the elements).
+ *
+ * @see Permutations#compose(int[], int[])
+ * @see Permutations#inverse(int[])
+ * @see Permutations#power(int[], long)
+ * @author drax
+ */
+final class PermutationOps {
+	static final int LEAF = 1 << 16;   // below that many elements, don't split
+
+	private PermutationOps() {}
+
+	/**
+	 * r[i] = p[q[i]] for i in [0, n[.
+	 */
+	static int[] compose(int[] p, int[] q, ForkJoinPool pool) {
+		if (p.length != q.length)
+			throw new IllegalArgumentException("Sizes differ: " + p.length + " and " + q.length);
+		int[] r = new int[q.length];
+		run(pool, q.length, (lo, hi) -> {
+			for (int i = lo; i < hi; i++)
+				r[i] = p[q[i]];
+		});
+		return r;
+	}
+
+	/**
+	 * r[p[i]] = i for i in [0, n[.
+	 */
+	static int[] inverse(int[] p, ForkJoinPool pool) {
+		int[] r = new int[p.length];
+		run(pool, p.length, (lo, hi) -> {
+			for (int i = lo; i < hi; i++)
+				r[p[i]] = i;
+		});
+		return r;
+	}
+
+	/**
+	 * r[i] = p applied k times to i.
+	 */
+	static int[] power(int[] p, long k, ForkJoinPool pool) {
+		final Cycles cycles = Cycles.of(p);
+		final int[] e = cycles.elements();
+		int[] r = new int[p.length];
+		run(pool, p.length, (lo, hi) -> {
+			// the cycle holding elements[lo]: last offset <= lo
+			int a = 0, b = cycles.count() - 1;
+			while (a < b) {
+				int m = (a + b + 1) >>> 1;
+				if (cycles.offset(m) <= lo) a = m;
+				else b = m - 1;
+			}
+			for (int c = a, t = lo; t < hi; c++) {
+				final int from = cycles.offset(c);
+				final int len = cycles.offset(c + 1) - from;
+				final int end = Math.min(from + len, hi);
+				int s = (int) Math.floorMod(k, (long) len);
+				int j = t - from + s;             // position of the image of e[t], in [0, 2 * len[
+				if (j >= len) j -= len;
+				for (; t < end; t++) {
+					r[e[t]] = e[from + j];
+					if (++j == len) j = 0;
+				}
+			}
+		});
+		return r;
+	}
+
+	/**
+	 * A piece of work on the indices [lo, hi[.
+	 */
+	@FunctionalInterface
+	private interface Range {
+		void run(int lo, int hi);
+	}
+
+	private static void run(ForkJoinPool pool, int n, Range range) {
+		if (pool == null || n <= LEAF) range.run(0, n);
+		else pool.invoke(new Chunk(range, 0, n));
+	}
+
+	/**
+	 * Splits [lo, hi[ in halves down to LEAF elements.
+	 */
+	private static final class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Range range;
+		private final int lo, hi;
+
+		Chunk(Range range, int lo, int hi) {
+			this.range = range; this.lo = lo; this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= LEAF) {
+				range.run(lo, hi);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Chunk(range, lo, mid), new Chunk(range, mid, hi));
+		}
+	}
+}
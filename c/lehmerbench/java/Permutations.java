@@ -1,10 +1,12 @@
 import java.math.BigInteger;
+import java.nio.IntBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 import java.util.random.RandomGenerator;
 
 /**
@@ -16,17 +18,37 @@ public class Permutations {
 
 	private static final RandomGenerator rand = new SplittableRandom(1);
 
+	/** FACTORIALS[n] = n!, up to 20! which is the last one to fit in a long. */
+	private static final long[] FACTORIALS = new long[21];
+	static {
+		FACTORIALS[0] = 1;
+		for (int i = 1; i < FACTORIALS.length; i++)
+			FACTORIALS[i] = FACTORIALS[i - 1] * i;
+	}
+
 	/**
 	 * Computes the Lehmer code of the given array using ToggleArray.
 	 * <p> Complexity: O(n log n)
+	 * <p>Allocates a new ToggleArray on every call, see LehmerCodec for many small permutations.
 	 *
 	 * @param perm The permutation array.
 	 * @return The Lehmer code array.
 	 */
 	public static int[] lehmer(int[] perm) {
+		return lehmer(perm, new ToggleArray(perm.length));
+	}
+
+	/**
+	 * Same as {@link #lehmer(int[])} but with the given ToggleArray,
+	 * which allows to choose its layout.
+	 *
+	 * @param perm The permutation array.
+	 * @param ta A ToggleArray of the same size, all down.
+	 * @return The Lehmer code array.
+	 */
+	public static int[] lehmer(int[] perm, ToggleArray ta) {
 		int len = perm.length;
 		int[] lehmer = new int[len];
-		ToggleArray ta = new ToggleArray(len);
 		for (int i = 0; i < len - 1; i++) {
 			int n = ta.numDLE(perm[i]);
 			ta.setUp(n);
@@ -35,6 +57,19 @@ public class Permutations {
 		return lehmer;
 	}
 
+	/**
+	 * Computes the Lehmer code of the given array on all cores.
+	 * <p>Unlike lehmer(), which updates a ToggleArray one element after the other,
+	 * this counts the inversions of each element with a ForkJoin merge sort (see ParallelLehmer).
+	 * <p>Complexity: O(n log n), split across the common ForkJoinPool
+	 *
+	 * @param perm The permutation array.
+	 * @return The Lehmer code array, same as lehmer(perm).
+	 */
+	public static int[] lehmerParallel(int[] perm) {
+		return ParallelLehmer.lehmer(perm, ForkJoinPool.commonPool());
+	}
+
 	/**
 	 * Rebuild the permutation array from its Lehmer code using ToggleArray
 	 * <p>Complexity: O(n log n)
@@ -43,14 +78,60 @@ public class Permutations {
 	 * @return
 	 */
 	public static int[] unlehmer(int[] lehmer) {
+		return unlehmer(lehmer, new ToggleArray(lehmer.length));
+	}
+
+	/**
+	 * Same as {@link #unlehmer(int[])} but with the given ToggleArray,
+	 * which allows to choose its layout.
+	 *
+	 * @param lehmer The Lehmer code array.
+	 * @param ta A ToggleArray of the same size, all down.
+	 * @return The corresponding permutation array.
+	 */
+	public static int[] unlehmer(int[] lehmer, ToggleArray ta) {
 		int len = lehmer.length;
 		int[] perm = new int[len];
-		ToggleArray ta = new ToggleArray(len);
 		for (int i = 0; i < len; i++)
 			perm[i] = ta.setUp(lehmer[i]);
 		return perm;
 	}
 
+	/**
+	 * Rebuild the permutation array from its Lehmer code on all cores.
+	 * <p>Instead of raising the toggles one after the other, the code is split by values
+	 * (lower half, upper half) recursively, and each part is decoded in parallel (see ParallelLehmer).
+	 * <p>Complexity: O(n log n), split across the common ForkJoinPool
+	 *
+	 * @param lehmer The Lehmer code array.
+	 * @return The corresponding permutation array, same as unlehmer(lehmer).
+	 */
+	public static int[] unlehmerParallel(int[] lehmer) {
+		return ParallelLehmer.unlehmer(lehmer, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the Lehmer code with the algorithm that is the fastest for its size on this machine
+	 * (lehmer(), lehmer1(), lehmer2() or their SIMD version), see LehmerSelector.
+	 *
+	 * @param perm The permutation array.
+	 * @return The Lehmer code array, same as lehmer(perm).
+	 */
+	public static int[] encode(int[] perm) {
+		return LehmerSelector.instance().encode(perm);
+	}
+
+	/**
+	 * Rebuilds the permutation with the algorithm that is the fastest for its size on this machine
+	 * (unlehmer(), permFromLehmer() or invlehmer()), see LehmerSelector.
+	 *
+	 * @param lehmer The Lehmer code array.
+	 * @return The corresponding permutation array, same as unlehmer(lehmer).
+	 */
+	public static int[] decode(int[] lehmer) {
+		return LehmerSelector.instance().decode(lehmer);
+	}
+
 	/**
 	 * Computes the integer corresponding to the Lehmer array in the factorial
 	 * number base (mixed base). Each value from the array is the coefficient of
@@ -124,6 +205,138 @@ public class Permutations {
 		return res;
 	}
 
+	/**
+	 * Same as {@link #factoradic(int[])} but using a product tree (binary splitting),
+	 * so that BigInteger only multiplies numbers of similar sizes.
+	 * <p>That's a lot faster for big arrays (100k+), see Factoradic for the details.
+	 *
+	 * @param lehmer The Lehmer code array
+	 * @param pool The pool used to compute subtrees in parallel, or null to stay on the current thread.
+	 * @return The corresponding factoradic number.
+	 */
+	public static BigInteger factoradicTree(int[] lehmer, ForkJoinPool pool) {
+		return Factoradic.factoradic(lehmer, pool);
+	}
+
+	/**
+	 * Same as {@link #inverseFactoradic(BigInteger)} but using a product tree (binary splitting).
+	 *
+	 * @param factoradic The factoradic number to convert.
+	 * @param pool The pool used to compute subtrees in parallel, or null to stay on the current thread.
+	 * @return The Lehmer code representing this factoradic number.
+	 * @see #factoradicTree(int[], ForkJoinPool)
+	 */
+	public static int[] inverseFactoradicTree(BigInteger factoradic, ForkJoinPool pool) {
+		return Factoradic.inverseFactoradic(factoradic, pool);
+	}
+
+	/**
+	 * Same as {@link #inverseFactoradic(BigInteger, int)} but using a product tree (binary splitting).
+	 *
+	 * @param factoradic The factoradic representation of a permutation
+	 * @param size The number of elements in the original permutation
+	 * @param pool The pool used to compute subtrees in parallel, or null to stay on the current thread.
+	 * @return The Lehmer code of this factoradic number
+	 * @see #factoradicTree(int[], ForkJoinPool)
+	 */
+	public static int[] inverseFactoradicTree(BigInteger factoradic, int size, ForkJoinPool pool) {
+		return Factoradic.inverseFactoradic(factoradic, size, pool);
+	}
+
+	/**
+	 * Computes the rank of a small permutation, same as factoradic(lehmer(perm)) but in a long.
+	 * <p>The elements already seen are kept in a single long bitmask, so each Lehmer digit
+	 * is one Long.bitCount, and the rank is accumulated in Horner form (rank * (n - i) + digit).
+	 * No allocation, no BigInteger.
+	 * <p>Complexity: O(n)
+	 *
+	 * @param perm a permutation of [0, n-1], with n <= 20 (20! is the biggest factorial that fits in a long)
+	 * @return its rank among the permutations of the same size, in lexicographical order
+	 */
+	public static long rank64(int[] perm) {
+		final int n = perm.length;
+		if (n >= FACTORIALS.length)
+			throw new IllegalArgumentException("rank64 needs n <= 20, got " + n);
+		long used = 0;
+		long rank = 0;
+		for (int i = 0; i < n; i++) {
+			long bit = 1L << perm[i];
+			rank = rank * (n - i) + (perm[i] - Long.bitCount(used & (bit - 1)));
+			used |= bit;
+		}
+		return rank;
+	}
+
+	/**
+	 * Rebuilds a small permutation from its rank, the inverse of {@link #rank64(int[])}.
+	 * <p>Each Lehmer digit is the quotient by a factorial (from a table) and is decoded right away
+	 * by selecting the digit-th element not used yet in a long bitmask.
+	 * <p>Complexity: O(n)
+	 *
+	 * @param rank 0 <= rank < n!
+	 * @param n the size of the permutation, n <= 20
+	 * @param out receives the permutation in out[0, n-1]
+	 * @return out
+	 */
+	public static int[] unrank64(long rank, int n, int[] out) {
+		if (n >= FACTORIALS.length || n < 0)
+			throw new IllegalArgumentException("unrank64 needs 0 <= n <= 20, got " + n);
+		if (rank < 0 || rank >= FACTORIALS[n])
+			throw new IllegalArgumentException("rank " + rank + " out of [0, " + n + "![");
+		long unused = -1L;
+		for (int i = 0; i < n; i++) {
+			long f = FACTORIALS[n - 1 - i];
+			int digit = (int) (rank / f);
+			rank -= digit * f;
+			int v = RankSelectBlocked.selectInWord(unused, digit);
+			unused &= ~(1L << v);
+			out[i] = v;
+		}
+		return out;
+	}
+
+	/**
+	 * Ranks a batch of small permutations of the same size, stored back to back.
+	 * <p>Same as calling rank64() on each of them, but ranges of the batch are ranked
+	 * in parallel and nothing is allocated per permutation (see BatchRank).
+	 *
+	 * @param perms ranks.length * n ints from its position (which doesn't move), heap or direct
+	 * @param n the size of each permutation, n <= 20
+	 * @param ranks receives the rank of each permutation
+	 * @param pool The pool ranking the ranges in parallel, or null to stay on the current thread.
+	 */
+	public static void rankBatch64(IntBuffer perms, int n, long[] ranks, ForkJoinPool pool) {
+		BatchRank.rank64(perms, n, ranks, pool);
+	}
+
+	/**
+	 * Same as {@link #rankBatch64(IntBuffer, int, long[], ForkJoinPool)} on an int[].
+	 */
+	public static void rankBatch64(int[] perms, int n, long[] ranks, ForkJoinPool pool) {
+		BatchRank.rank64(IntBuffer.wrap(perms), n, ranks, pool);
+	}
+
+	/**
+	 * Ranks a batch of permutations of the same size, stored back to back.
+	 * <p>Same as factoradic(lehmer()) on each of them, but ranges of the batch are ranked
+	 * in parallel, each worker thread reusing its own LehmerCodec (see BatchRank).
+	 *
+	 * @param perms ranks.length * n ints from its position (which doesn't move), heap or direct
+	 * @param n the size of each permutation
+	 * @param ranks receives the rank of each permutation
+	 * @param pool The pool ranking the ranges in parallel, or null to stay on the current thread.
+	 */
+	public static void rankBatch(IntBuffer perms, int n, BigInteger[] ranks, ForkJoinPool pool) {
+		BatchRank.rank(perms, n, ranks, pool);
+	}
+
+	/**
+	 * Same as {@link #rankBatch(IntBuffer, int, BigInteger[], ForkJoinPool)} on an int[].
+	 */
+	public static void rankBatch(int[] perms, int n, BigInteger[] ranks, ForkJoinPool pool) {
+		BatchRank.rank(IntBuffer.wrap(perms), n, ranks, pool);
+	}
+
 	/**
 	 * Given a permutation array of size n (containing numbers from 0 to n-1 only once),
 	 * modifies the input so it is now the next permutation in lexicographical order.
@@ -316,6 +529,37 @@ public class Permutations {
 	    return cycles;
 	}
 
+	/**
+	 * Same cycles as findCycles(), in a compact form: two arrays whatever the number of cycles.
+	 * <p>p is not modified. Instead of adding N to the visited elements (which overflows for N > 2^30),
+	 * they are marked in a BitField.
+	 * @param p a permutation
+	 * @return all cycles found in p
+	 */
+	public static Cycles findCyclesCompact(int[] p) {
+		return Cycles.of(p);
+	}
+
+	/**
+	 * Reports the cycles of p one at a time without storing them, in the same order as findCycles().
+	 * <p>The only allocation is the BitField of visited elements (N/8 bytes).
+	 * @param p a permutation (not modified)
+	 * @param visitor called once per cycle, with its first element and its length
+	 */
+	public static void forEachCycle(int[] p, CycleVisitor visitor) {
+		final int N = p.length;
+		BitField visited = new BitFieldDrax(N);
+		for (int i = visited.nextClearBit(0); i < N; i = visited.nextClearBit(i + 1)) {
+			int j = i;
+			int length = 0;
+			do {
+				visited.set(j);
+				length++;
+			} while ((j = p[j]) != i);
+			visitor.visit(i, length);
+		}
+	}
+
 	/**
 	 * Applies the cycles to given permutation ar.
 	 * @param ar a permutation (array of all elements between 0 and N-1)
@@ -334,6 +578,83 @@ public class Permutations {
 		return a;
 	}
 
+	/**
+	 * Composes two permutations: r[i] = p[q[i]], that is q first, then p.
+	 * <p>Complexity: O(n)
+	 * @param p the permutation applied last
+	 * @param q the permutation applied first, same size as p
+	 * @return the new permutation p∘q
+	 */
+	public static int[] compose(int[] p, int[] q) {
+		return PermutationOps.compose(p, q, null);
+	}
+
+	/**
+	 * Same as {@link #compose(int[], int[])}, split in chunks on the common ForkJoinPool
+	 * above 64k elements.
+	 */
+	public static int[] composeParallel(int[] p, int[] q) {
+		return PermutationOps.compose(p, q, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * The inverse permutation: r[p[i]] = i.
+	 * <p>Complexity: O(n)
+	 * @param p a permutation
+	 * @return the new permutation p⁻¹
+	 */
+	public static int[] inverse(int[] p) {
+		return PermutationOps.inverse(p, null);
+	}
+
+	/**
+	 * Same as {@link #inverse(int[])}, split in chunks on the common ForkJoinPool
+	 * above 64k elements.
+	 */
+	public static int[] inverseParallel(int[] p) {
+		return PermutationOps.inverse(p, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Applies p k times: r[i] = p[p[...p[i]]].
+	 * <p>Goes through the cycles of p, where p^k just rotates each cycle by k mod its length
+	 * (see PermutationOps). So the cost doesn't depend on k.
+	 * <p>Complexity: O(n)
+	 * @param p a permutation
+	 * @param k any power, 0 gives the identity and negative ones are powers of the inverse
+	 * @return the new permutation p^k
+	 */
+	public static int[] power(int[] p, long k) {
+		return PermutationOps.power(p, k, null);
+	}
+
+	/**
+	 * Same as {@link #power(int[], long)}: the cycles are found on the current thread,
+	 * then rotated in chunks on the common ForkJoinPool above 64k elements.
+	 */
+	public static int[] powerParallel(int[] p, long k) {
+		return PermutationOps.power(p, k, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Same as {@link #cyclePerm(int[], List)} with compact cycles.
+	 * @param ar a permutation (array of all elements between 0 and N-1)
+	 * @param cycles the cycles
+	 * @return a new permutation of the cycles applied to ar
+	 */
+	public static int[] cyclePerm(int[] ar, Cycles cycles) {
+		int[] a = new int[ar.length];
+		int[] e = cycles.elements();
+		for (int c = 0; c < cycles.count(); c++) {
+			int from = cycles.offset(c), to = cycles.offset(c + 1);
+			int tmp = ar[e[from]];
+			for (int i = from + 1; i < to; i++)
+				a[e[i - 1]] = ar[e[i]];
+			a[e[to - 1]] = tmp;
+		}
+		return a;
+	}
+
 	/**
 	 * Gives the parity of the permutation using its cycle decomposition.
 	 * A cycle of length 2 is a transposition. Counting those transpositions is
@@ -353,11 +674,45 @@ public class Permutations {
 	}
 
 	/**
-	 * TODO Prove that's true (test5 seems to agree)
+	 * Same as {@link #isEven(List)} with compact cycles, in O(1) (see Cycles.isEven()).
+	 * @param cycles the cycles of a permutation
+	 * @return true if the permutation is even
+	 */
+	public static boolean isEven(Cycles cycles) {
+		return cycles.isEven();
+	}
+
+	/**
+	 * Gives the parity of a permutation by counting its cycles, without storing them.
+	 * <p>A cycle of length L is L-1 transpositions, so the parity is the one of n - (number of cycles).
+	 * The only allocation is a visited BitField (n/8 bytes).
+	 * <p>Complexity: O(n)
+	 * @param perm a permutation (not modified)
+	 * @return 0 if perm is even, 1 if it's odd
+	 */
+	public static int parity(int[] perm) {
+		return Parity.parity(perm);
+	}
+
+	/**
+	 * Same as {@link #parity(int[])} on the common ForkJoinPool: chunks of indices are walked in parallel
+	 * with an atomic visited bitmap, and the pieces of cycles they found are linked back together
+	 * at the end (see Parity).
+	 * @param perm a permutation (not modified)
+	 * @return 0 if perm is even, 1 if it's odd
+	 */
+	public static int parityParallel(int[] perm) {
+		return Parity.parity(perm, ForkJoinPool.commonPool());
+	}
+
+	/**
 	 * Since a Lehmer code is all about counting inversions, it can be used
-	 * to quickly give the parity of a permutation.
+	 * to quickly give the parity of a permutation: lehmer[i] is the number of inversions
+	 * (i, j) with j > i, so the sum of the code is the number of inversions, and the parity
+	 * of a permutation is the parity of its number of inversions (each transposition of
+	 * adjacent elements changes it by exactly one). testParity() checks it against parity().
 	 * Note: computing cycles is faster than computing lehmer so if the parity
-	 * alone is needed, use the other function.
+	 * alone is needed, use parity().
 	 * @param Important! A Lehmer code
 	 * @return true if the permutation represented by this Lehmer code is even
 	 */
@@ -409,6 +764,34 @@ public class Permutations {
 		}
 	}
 
+	/**
+	 * Parallel shuffle, deterministic for a given seed (whatever the number of threads).
+	 * <p>Blocks are shuffled in parallel, then merged two by two (MergeShuffle), each task
+	 * drawing from its own SplittableRandom split from the seed. Uniform, like Fisher-Yates,
+	 * but not the same result as shuffle() for the same seed.
+	 * <p>Complexity: O(n log n) random bits, O(n) random ints, split across the common ForkJoinPool
+	 *
+	 * @param array the array to shuffle (will be modified)
+	 * @param seed the seed of the random generator
+	 */
+	public static void shuffleParallel(int[] array, long seed) {
+		MergeShuffle.shuffle(array, false, seed, MergeShuffle.LEAF, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a random permutation of [0, size-1] on all cores, same as getPermutation() followed by
+	 * shuffleParallel(), but the identity is written by the shuffle itself (inside-out Fisher-Yates).
+	 *
+	 * @param size the length of the array
+	 * @param seed the seed of the random generator, the same seed always gives the same permutation
+	 * @return a uniformly random permutation of [0, 1, ..., size-1]
+	 */
+	public static int[] randomPermutation(int size, long seed) {
+		int[] perm = new int[size];
+		MergeShuffle.shuffle(perm, true, seed, MergeShuffle.LEAF, ForkJoinPool.commonPool());
+		return perm;
+	}
+
 	/**
 	 * Creates a permutation array of size <code>size</code>.
 	 * <p>The array contains all number between 0 and size-1, no dup.
@@ -429,7 +812,40 @@ public class Permutations {
 	}
 
 	public static void main(String[] args) {
-		test2(); // benchmark lehmer
+		if (args.length != 0 && args[0].equals("layouts"))
+			testLayouts(); // benchmark the ToggleArray layouts (needs -Xmx4g for 100M)
+		else if (args.length != 0 && args[0].equals("parallel"))
+			testParallel(); // check lehmerParallel() and unlehmerParallel() around the sequential cutoffs
+		else if (args.length != 0 && args[0].equals("stream"))
+			testStream(); // check LehmerStream round trips, across window boundaries
+		else if (args.length != 0 && args[0].equals("bitfield"))
+			testBitField(); // check the bulk BitField operations of every implementation against java.util.BitSet
+		else if (args.length != 0 && args[0].equals("factoradic"))
+			testFactoradic(); // check and benchmark the product tree factoradic
+		else if (args.length != 0 && args[0].equals("codec"))
+			testCodec(); // check and benchmark the reusable codec on small permutations
+		else if (args.length != 0 && args[0].equals("rank64"))
+			testRank64(); // check and benchmark ranking small permutations in a long
+		else if (args.length != 0 && args[0].equals("batch"))
+			testBatch(); // check and benchmark ranking packed batches of permutations
+		else if (args.length != 0 && args[0].equals("strategies"))
+			testStrategies(); // check the lehmer strategies and find where SIMD O(n²) stops beating ToggleArray
+		else if (args.length != 0 && args[0].equals("cycles"))
+			testCycles(); // check and benchmark the compact cycles
+		else if (args.length != 0 && args[0].equals("ops"))
+			testOps(); // check and benchmark compose, inverse and power
+		else if (args.length != 0 && args[0].equals("parity"))
+			testParity(); // check parity() against the Lehmer code and the cycles, then benchmark it
+		else if (args.length != 0 && args[0].equals("shuffle"))
+			testShuffle(); // check the parallel shuffle is deterministic and uniform, then benchmark it
+		else if (args.length != 0 && args[0].equals("enumerate"))
+			testEnumerate(); // check and benchmark the chunked enumeration of all n! permutations
+		else if (args.length != 0 && args[0].equals("persist"))
+			testPersist(); // check that a checkpointed ToggleArrayFile reopens as it was, time it on 2^30 toggles
+		else if (args.length != 0 && args[0].equals("calibrate"))
+			calibrate(args.length > 1 ? args[1] : null); // measure the encode/decode crossovers and save them
+		else
+			test2(); // benchmark lehmer
 	}
 
 	public static void test2() {
@@ -451,6 +867,863 @@ public class Permutations {
 		System.out.println("Done");
 	}
 
+	/**
+	 * Compares the lehmer() duration of every ToggleArray layout against the original one (TREE).
+	 * Each size is run twice and only the second run is kept, to give the JIT some warmup.
+	 */
+	public static void testLayouts() {
+		for (int N : new int[] { 1, 2, 63, 64, 65, 511, 512, 513, 4095, 4096, 4097, 100_000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int[] lehmer = lehmer(perm, new ToggleArray(N, RankSelect.Layout.TREE));
+			for (RankSelect.Layout layout : RankSelect.Layout.values()) {
+				if (!Arrays.equals(lehmer, lehmer(perm, new ToggleArray(N, layout))))
+					throw new AssertionError("lehmer differs from TREE with " + layout + " for N=" + N);
+				if (!Arrays.equals(perm, unlehmer(lehmer, new ToggleArray(N, layout))))
+					throw new AssertionError("unlehmer differs from TREE with " + layout + " for N=" + N);
+				ToggleArray ref = new ToggleArray(N, RankSelect.Layout.TREE), ta = new ToggleArray(N, layout);
+				ref.allUp();
+				ta.allUp();
+				for (int i = 0; i < N; i += 3) {
+					if (ref.setDown(i % ref.upCount()) != ta.setDown(i % ta.upCount()))
+						throw new AssertionError("setDown differs from TREE with " + layout + " for N=" + N);
+					int j = (i * 7) % N;
+					if (ref.numULE(j) != ta.numULE(j) || ref.numDRI(j) != ta.numDRI(j)
+							|| ref.getUpIndex(i % (ref.upCount() + 1)) != ta.getUpIndex(i % (ta.upCount() + 1)))
+						throw new AssertionError("counts differ from TREE with " + layout + " for N=" + N);
+				}
+			}
+		}
+		System.out.println("Layouts OK");
+
+		for (int N : new int[] { 1_000_000, 10_000_000, 100_000_000 }) {
+			System.out.println("Creating an array of " + N + " elements.");
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			long ref = 0;
+			for (RankSelect.Layout layout : RankSelect.Layout.values()) {
+				long elapsed = 0;
+				for (int run = 0; run < 2; run++) {
+					ToggleArray ta = new ToggleArray(N, layout);
+					long start = System.currentTimeMillis();
+					lehmer(perm, ta);
+					elapsed = System.currentTimeMillis() - start;
+				}
+				if (layout == RankSelect.Layout.TREE) ref = elapsed;
+				System.out.printf("  %-10s %6d ms  (x%.2f)%n", layout, elapsed, (double) ref / Math.max(elapsed, 1));
+			}
+		}
+		System.out.println("Done");
+	}
+
+	/**
+	 * Checks lehmerParallel() and unlehmerParallel() against lehmer() and unlehmer(), on sorted, reversed
+	 * and shuffled permutations whose sizes straddle the insertion sort cutoff (32), the sort and merge
+	 * leaves (8192) and the decode leaf (65536).
+	 */
+	public static void testParallel() {
+		for (int N : new int[] { 0, 1, 2, 31, 32, 33, 8191, 8192, 8193, 16_383, 16_384, 16_385,
+				65_535, 65_536, 65_537, 131_073, 1_000_000 }) {
+			int[] sorted = getPermutation(N), reversed = new int[N], shuffled = getPermutation(N);
+			for (int i = 0; i < N; i++) reversed[i] = N - 1 - i;
+			shuffle(shuffled);
+			for (int[] perm : new int[][] { sorted, reversed, shuffled }) {
+				int[] lehmer = lehmer(perm);
+				if (!Arrays.equals(lehmer, lehmerParallel(perm)))
+					throw new AssertionError("lehmerParallel differs for N=" + N);
+				if (!Arrays.equals(unlehmer(lehmer), unlehmerParallel(lehmer)) || !Arrays.equals(perm, unlehmerParallel(lehmer)))
+					throw new AssertionError("unlehmerParallel differs for N=" + N);
+			}
+		}
+		System.out.println("Parallel OK");
+	}
+
+	/**
+	 * Round trips permutations through LehmerStream files and checks them against lehmer(), with a window
+	 * of 1000 ints (several windows per file) and the default one (the whole file in one window).
+	 */
+	public static void testStream() {
+		try {
+			java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("lehmerstream");
+			java.nio.file.Path permFile = dir.resolve("perm"), lehmerFile = dir.resolve("lehmer"), back = dir.resolve("back");
+			for (int N : new int[] { 0, 1, 999, 1000, 1001, 100_003 }) {
+				int[] perm = getPermutation(N);
+				shuffle(perm);
+				java.nio.ByteBuffer bytes = java.nio.ByteBuffer.allocate(N << 2).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+				bytes.asIntBuffer().put(perm);
+				java.nio.file.Files.write(permFile, bytes.array());
+				for (int window : new int[] { 1000, 1 << 27 }) {
+					LehmerStream.process(permFile, lehmerFile, true, window);
+					LehmerStream.process(lehmerFile, back, false, window);
+					int[] lehmer = new int[N], out = new int[N];
+					java.nio.ByteBuffer.wrap(java.nio.file.Files.readAllBytes(lehmerFile))
+							.order(java.nio.ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(lehmer);
+					java.nio.ByteBuffer.wrap(java.nio.file.Files.readAllBytes(back))
+							.order(java.nio.ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(out);
+					if (!Arrays.equals(lehmer(perm), lehmer))
+						throw new AssertionError("LehmerStream.lehmer differs for N=" + N + ", window=" + window);
+					if (!Arrays.equals(perm, out))
+						throw new AssertionError("LehmerStream.unlehmer differs for N=" + N + ", window=" + window);
+				}
+			}
+			for (java.nio.file.Path f : new java.nio.file.Path[] { permFile, lehmerFile, back, dir })
+				java.nio.file.Files.delete(f);
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		}
+		System.out.println("Stream OK");
+	}
+
+	/**
+	 * Checks the three BitFields against java.util.BitSet after random single bit and range changes,
+	 * combined by and, or, xor and andNot with a BitField of the same class (word by word fast paths)
+	 * and of another class (bit by bit defaults), on sizes around the 32 and 64 bit word boundaries.
+	 */
+	public static void testBitField() {
+		SplittableRandom rng = new SplittableRandom(8);
+		for (int N : new int[] { 1, 2, 63, 64, 65, 127, 128, 129, 1000, 4097 }) {
+			for (int round = 0; round < 20; round++) {
+				java.util.BitSet ref = new java.util.BitSet(N), other = new java.util.BitSet(N);
+				BitField[] fields = { new BitFieldDrax(N), new BitFieldLong(N), new BitFieldDirect(N),
+						new BitFieldDrax(N), new BitFieldLong(N), new BitFieldDirect(N) };
+				BitField[] others = { new BitFieldDrax(N), new BitFieldLong(N), new BitFieldDirect(N),  // same class
+						new BitFieldLong(N), new BitFieldDirect(N), new BitFieldDrax(N) };                 // mixed
+				for (int op = 0; op < 30; op++) {
+					int from = rng.nextInt(N + 1), to = from + rng.nextInt(N - from + 1);
+					int i = rng.nextInt(N);
+					switch (rng.nextInt(6)) {
+						case 0: ref.set(i); for (BitField f : fields) f.set(i); break;
+						case 1: ref.clear(i); for (BitField f : fields) f.clear(i); break;
+						case 2: ref.set(from, to); for (BitField f : fields) f.setRange(from, to); break;
+						case 3: ref.clear(from, to); for (BitField f : fields) f.clearRange(from, to); break;
+						case 4: other.set(from, to); for (BitField f : others) f.setRange(from, to); break;
+						default: other.clear(i); for (BitField f : others) f.clear(i); break;
+					}
+					if (op % 10 == 9) {
+						int logic = rng.nextInt(4);
+						switch (logic) {
+							case 0: ref.and(other); break;
+							case 1: ref.or(other); break;
+							case 2: ref.xor(other); break;
+							default: ref.andNot(other); break;
+						}
+						for (int k = 0; k < fields.length; k++) {
+							switch (logic) {
+								case 0: fields[k].and(others[k]); break;
+								case 1: fields[k].or(others[k]); break;
+								case 2: fields[k].xor(others[k]); break;
+								default: fields[k].andNot(others[k]); break;
+							}
+						}
+					}
+				}
+				for (int c = 0; c < fields.length; c++) {
+					BitField f = fields[c];
+					String name = f.getClass().getName() + " with " + others[c].getClass().getName() + " N=" + N;
+					if (f.cardinality() != ref.cardinality())
+						throw new AssertionError("cardinality differs for " + name);
+					for (int i = 0; i <= N; i++) {
+						if (f.rank(i) != ref.get(0, i).cardinality())
+							throw new AssertionError("rank(" + i + ") differs for " + name);
+						if (i == N) break;
+						if (f.get(i) != ref.get(i))
+							throw new AssertionError("get(" + i + ") differs for " + name);
+						if (f.nextSetBit(i) != ref.nextSetBit(i))
+							throw new AssertionError("nextSetBit(" + i + ") differs for " + name);
+						if (f.nextClearBit(i) != Math.min(N, ref.nextClearBit(i)))
+							throw new AssertionError("nextClearBit(" + i + ") differs for " + name);
+					}
+					for (int k = 0, b = ref.nextSetBit(0); k <= ref.cardinality(); k++, b = b < 0 ? -1 : ref.nextSetBit(b + 1))
+						if (f.select(k) != b)
+							throw new AssertionError("select(" + k + ") differs for " + name);
+					java.util.PrimitiveIterator.OfInt bits = f.setBits(), expected = ref.stream().iterator();
+					while (expected.hasNext())
+						if (!bits.hasNext() || bits.nextInt() != expected.nextInt())
+							throw new AssertionError("setBits differs for " + name);
+					if (bits.hasNext())
+						throw new AssertionError("setBits differs for " + name);
+				}
+			}
+		}
+		System.out.println("BitField OK");
+	}
+
+	/**
+	 * Checks that the product tree factoradic gives the exact same results as the original methods,
+	 * sequential and parallel, in both directions. Then compares their duration on a big array.
+	 */
+	public static void testFactoradic() {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (int N : new int[] { 0, 1, 2, 3, 31, 32, 33, 100, 1000, 5000, 20_000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int[] lehmer = lehmer(perm);
+			BigInteger f = factoradic(lehmer);
+			if (!f.equals(factoradicTree(lehmer, null)) || !f.equals(factoradicTree(lehmer, pool)))
+				throw new AssertionError("factoradicTree differs for N=" + N);
+			if (!Arrays.equals(inverseFactoradic(f, N), inverseFactoradicTree(f, N, null))
+					|| !Arrays.equals(inverseFactoradic(f, N), inverseFactoradicTree(f, N, pool)))
+				throw new AssertionError("inverseFactoradicTree(f, size) differs for N=" + N);
+			if (!Arrays.equals(inverseFactoradic(f), inverseFactoradicTree(f, null))
+					|| !Arrays.equals(inverseFactoradic(f), inverseFactoradicTree(f, pool)))
+				throw new AssertionError("inverseFactoradicTree(f) differs for N=" + N);
+			BigInteger big = f.add(BigInteger.ONE).shiftLeft(N);  // bigger than N!, digits above are dropped
+			if (!Arrays.equals(inverseFactoradic(big, N), inverseFactoradicTree(big, N, pool)))
+				throw new AssertionError("inverseFactoradicTree(big, size) differs for N=" + N);
+		}
+		System.out.println("Factoradic OK");
+
+		final int N = 100_000;
+		long start, elapsed;
+		int[] perm = getPermutation(N);
+		shuffle(perm);
+		int[] lehmer = lehmer(perm);
+		start = System.currentTimeMillis();
+		BigInteger f = factoradic(lehmer);
+		elapsed = System.currentTimeMillis() - start;
+		System.out.println("factoradic: " + elapsed + " ms");
+		start = System.currentTimeMillis();
+		factoradicTree(lehmer, pool);
+		elapsed = System.currentTimeMillis() - start;
+		System.out.println("factoradicTree: " + elapsed + " ms");
+		start = System.currentTimeMillis();
+		inverseFactoradic(f, N);
+		elapsed = System.currentTimeMillis() - start;
+		System.out.println("inverseFactoradic: " + elapsed + " ms");
+		start = System.currentTimeMillis();
+		inverseFactoradicTree(f, N, pool);
+		elapsed = System.currentTimeMillis() - start;
+		System.out.println("inverseFactoradicTree: " + elapsed + " ms");
+	}
+
+	/**
+	 * Checks LehmerCodec against lehmer() and unlehmer(), on both sides of its 64 elements limit
+	 * and with permutations smaller than the codec. Then compares both on many small permutations.
+	 */
+	public static void testCodec() {
+		for (int size : new int[] { 1, 8, 64, 65, 1000 }) {
+			LehmerCodec codec = new LehmerCodec(size);
+			int[] out = new int[size];
+			for (int N : new int[] { 0, 1, size / 2, size - 1, size }) {
+				for (int run = 0; run < 20; run++) {
+					int[] perm = getPermutation(N);
+					shuffle(perm);
+					int[] lehmer = lehmer(perm);
+					if (!Arrays.equals(lehmer, 0, N, codec.encode(perm, out), 0, N))
+						throw new AssertionError("encode differs for size=" + size + " N=" + N);
+					if (!Arrays.equals(perm, 0, N, codec.decode(lehmer, out), 0, N))
+						throw new AssertionError("decode differs for size=" + size + " N=" + N);
+				}
+			}
+			int[] perm = getPermutation(size);
+			shuffle(perm);
+			int[] lehmer = lehmer(perm);
+			try {
+				codec.encode(perm, new int[size / 2]);   // too short: fails half way
+				throw new AssertionError("encode into a short array did not fail");
+			} catch (ArrayIndexOutOfBoundsException expected) {
+				// the codec must still be usable
+			}
+			try {
+				codec.decode(lehmer, new int[size / 2]);
+				throw new AssertionError("decode into a short array did not fail");
+			} catch (ArrayIndexOutOfBoundsException expected) {
+				// same
+			}
+			if (!Arrays.equals(lehmer, codec.encode(perm, out)) || !Arrays.equals(perm, codec.decode(lehmer, out)))
+				throw new AssertionError("codec of size " + size + " broken by a failed call");
+		}
+		System.out.println("Codec OK");
+
+		for (int N : new int[] { 16, 64, 256 }) {
+			final int COUNT = 20_000_000 / N;  // same number of elements for each size
+			int[][] perms = new int[256][];
+			for (int i = 0; i < perms.length; i++) {
+				perms[i] = getPermutation(N);
+				shuffle(perms[i]);
+			}
+			int[] lehmer = new int[N];
+			int[] perm = new int[N];
+			long sum = 0;
+			for (int run = 0; run < 2; run++) {
+				long start = System.currentTimeMillis();
+				for (int i = 0; i < COUNT; i++)
+					sum += unlehmer(lehmer(perms[i & 255]))[N - 1];
+				long alloc = System.currentTimeMillis() - start;
+				LehmerCodec codec = LehmerCodec.local(N);
+				start = System.currentTimeMillis();
+				for (int i = 0; i < COUNT; i++)
+					sum += codec.decode(codec.encode(perms[i & 255], lehmer), perm)[N - 1];
+				long reuse = System.currentTimeMillis() - start;
+				if (run == 1)
+					System.out.printf("N=%-4d lehmer+unlehmer: %5d ms  codec: %5d ms%n", N, alloc, reuse);
+			}
+			if (sum == 42) System.out.println();  // keep the JIT from dropping the loops
+		}
+	}
+
+	/**
+	 * Checks rank64() and unrank64() against factoradic(lehmer()), every permutation of 8 elements
+	 * in order (with nextPermutation), then random ones up to 20 elements.
+	 * Then compares their speed with the BigInteger path.
+	 */
+	public static void testRank64() {
+		int[] perm = getPermutation(8);
+		int[] out = new int[20];
+		for (long r = 0; r < 40320; r++, nextPermutation(perm)) {
+			if (rank64(perm) != r || !Arrays.equals(perm, 0, 8, unrank64(r, 8, out), 0, 8))
+				throw new AssertionError("rank64 is not lexicographic at rank " + r);
+		}
+		for (int N = 0; N <= 20; N++) {
+			for (int run = 0; run < 1000; run++) {
+				perm = getPermutation(N);
+				shuffle(perm);
+				long r = rank64(perm);
+				if (r != factoradic(lehmer(perm)).longValueExact())
+					throw new AssertionError("rank64 differs for N=" + N);
+				if (!Arrays.equals(perm, 0, N, unrank64(r, N, out), 0, N))
+					throw new AssertionError("unrank64 differs for N=" + N);
+			}
+		}
+		System.out.println("Rank64 OK");
+
+		final int N = 12;
+		final int COUNT = 10_000_000;
+		int[][] perms = new int[256][];
+		for (int i = 0; i < perms.length; i++) {
+			perms[i] = getPermutation(N);
+			shuffle(perms[i]);
+		}
+		long sum = 0;
+		for (int run = 0; run < 2; run++) {
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < COUNT / 100; i++)
+				sum += factoradic(lehmer(perms[i & 255])).longValue();
+			long big = (System.currentTimeMillis() - start) * 100;
+			start = System.currentTimeMillis();
+			for (int i = 0; i < COUNT; i++)
+				sum += rank64(perms[i & 255]);
+			long rank = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			for (int i = 0; i < COUNT; i++)
+				sum += unrank64(i, N, out)[0];
+			long unrank = System.currentTimeMillis() - start;
+			if (run == 1)
+				System.out.printf("%d ranks of N=%d: factoradic(lehmer) ~%d ms, rank64 %d ms, unrank64 %d ms%n",
+						COUNT, N, big, rank, unrank);
+		}
+		if (sum == 42) System.out.println();  // keep the JIT from dropping the loops
+	}
+
+	/**
+	 * Checks rankBatch64() and rankBatch() against rank64() and factoradic(lehmer()), on arrays,
+	 * direct buffers and buffers not starting at 0. Then compares a whole batch ranked
+	 * one permutation at a time, by rankBatch64() on one thread and on the common pool.
+	 */
+	public static void testBatch() {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (int N : new int[] { 1, 5, 20, 21, 100 }) {
+			final int K = 3000;
+			int[] packed = new int[K * N + 3];
+			for (int j = 0; j < K; j++) {
+				int[] perm = getPermutation(N);
+				shuffle(perm);
+				System.arraycopy(perm, 0, packed, 3 + j * N, N);
+			}
+			IntBuffer heap = IntBuffer.wrap(packed);
+			heap.position(3);
+			IntBuffer direct = java.nio.ByteBuffer.allocateDirect(packed.length * 4).asIntBuffer().put(packed);
+			direct.position(3);
+			BigInteger[] big = new BigInteger[K];
+			BigInteger[] bigDirect = new BigInteger[K];
+			rankBatch(heap, N, big, pool);
+			rankBatch(direct, N, bigDirect, null);
+			long[] ranks = new long[K];
+			long[] ranksDirect = new long[K];
+			if (N <= 20) {
+				rankBatch64(heap, N, ranks, null);
+				rankBatch64(direct, N, ranksDirect, pool);
+			}
+			for (int j = 0; j < K; j++) {
+				int[] perm = Arrays.copyOfRange(packed, 3 + j * N, 3 + (j + 1) * N);
+				BigInteger r = factoradic(lehmer(perm));
+				if (!r.equals(big[j]) || !r.equals(bigDirect[j]))
+					throw new AssertionError("rankBatch differs for N=" + N + " at " + j);
+				if (N <= 20 && (r.longValue() != ranks[j] || r.longValue() != ranksDirect[j]))
+					throw new AssertionError("rankBatch64 differs for N=" + N + " at " + j);
+			}
+			if (heap.position() != 3 || direct.position() != 3)
+				throw new AssertionError("rankBatch moved the buffer position");
+		}
+		System.out.println("Batch OK");
+
+		final int N = 12;
+		final int K = 10_000_000;
+		int[] packed = new int[K * N];
+		int[] perm = getPermutation(N);
+		for (int j = 0; j < K; j++) {
+			shuffle(perm);
+			System.arraycopy(perm, 0, packed, j * N, N);
+		}
+		long[] ranks = new long[K];
+		for (int run = 0; run < 2; run++) {
+			long start = System.currentTimeMillis();
+			for (int j = 0; j < K; j++)
+				ranks[j] = rank64(Arrays.copyOfRange(packed, j * N, (j + 1) * N));
+			long single = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			rankBatch64(packed, N, ranks, null);
+			long seq = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			rankBatch64(packed, N, ranks, pool);
+			long par = System.currentTimeMillis() - start;
+			if (run == 1)
+				System.out.printf("%d ranks of N=%d: copy+rank64 %d ms, rankBatch64 %d ms, on %d threads %d ms%n",
+						K, N, single, seq, pool.getParallelism(), par);
+		}
+	}
+
+	/**
+	 * Checks that every LehmerStrategy gives the same code, then times them on mid-size permutations
+	 * to find the crossover between the O(n²) kernels and the ToggleArray.
+	 * Run with --add-modules jdk.incubator.vector (after compiling vector/) to get the SIMD ones.
+	 */
+	public static void testStrategies() {
+		for (LehmerStrategy strategy : LehmerStrategy.values())
+			System.out.println(strategy + (strategy.isVectorized() ? " (SIMD)" : ""));
+		for (int N : new int[] { 0, 1, 2, 3, 7, 8, 9, 31, 33, 100, 1000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int[] lehmer = lehmer(perm);
+			for (LehmerStrategy strategy : LehmerStrategy.values())
+				if (!Arrays.equals(lehmer, strategy.lehmer(perm)))
+					throw new AssertionError(strategy + " differs for N=" + N);
+		}
+		System.out.println("Strategies OK");
+
+		System.out.print("       N");
+		for (LehmerStrategy strategy : LehmerStrategy.values())
+			System.out.printf(" %16s", strategy);
+		System.out.println("  (microseconds per permutation)");
+		for (int N : new int[] { 1000, 2000, 5000, 10_000, 20_000, 50_000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int count = Math.max(1, 200_000_000 / N / N);  // about the same O(n²) work for each size
+			System.out.printf("%8d", N);
+			for (LehmerStrategy strategy : LehmerStrategy.values()) {
+				long elapsed = 0;
+				for (int run = 0; run < 2; run++) {
+					long start = System.nanoTime();
+					for (int i = 0; i < count; i++)
+						strategy.lehmer(perm);
+					elapsed = System.nanoTime() - start;
+				}
+				System.out.printf(" %16d", elapsed / count / 1000);
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Measures the crossover table of encode() and decode() and saves it where LehmerSelector.instance()
+	 * looks for it (or in the given file). Then checks encode() and decode() with the new table.
+	 *
+	 * @param file where to save the table, null for the default location
+	 */
+	public static void calibrate(String file) {
+		if (file == null)
+			file = System.getProperty("lehmer.calibration",
+					java.nio.file.Paths.get(System.getProperty("user.home"), "lehmer-calibration.properties").toString());
+		long start = System.currentTimeMillis();
+		LehmerSelector selector = LehmerSelector.calibrate();
+		System.out.println("Calibration: " + (System.currentTimeMillis() - start) + " ms");
+		System.out.print(selector);
+		try {
+			selector.save(java.nio.file.Paths.get(file));
+			System.out.println("Saved to " + file);
+		} catch (java.io.IOException e) {
+			System.err.println("Could not save " + file + ": " + e);
+		}
+		for (int N : new int[] { 0, 1, 5, 64, 100, 3000, 20_000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int[] lehmer = lehmer(perm);
+			if (!Arrays.equals(lehmer, selector.encode(perm)) || !Arrays.equals(perm, selector.decode(lehmer)))
+				throw new AssertionError("selector differs for N=" + N);
+		}
+		System.out.println("Calibration OK");
+	}
+
+	/**
+	 * Checks the compact cycles and forEachCycle() against findCycles(), then compares them
+	 * on a random permutation and on one made of transpositions only (N/2 cycles).
+	 */
+	public static void testCycles() {
+		for (int N : new int[] { 0, 1, 2, 3, 10, 1000, 100_000 }) {
+			int[] perm = getPermutation(N);
+			shuffle(perm);
+			int[] copy = perm.clone();
+			List<int[]> list = findCycles(perm);
+			Cycles cycles = findCyclesCompact(perm);
+			if (!Arrays.equals(perm, copy) || !cyclesToString(list).equals(cycles.toString()))
+				throw new AssertionError("findCyclesCompact differs for N=" + N);
+			if (isEven(list) != isEven(cycles) || isEven(list) != isEven(lehmer(perm)))
+				throw new AssertionError("isEven differs for N=" + N);
+			if (!Arrays.equals(cyclePerm(perm, list), cyclePerm(perm, cycles)))
+				throw new AssertionError("cyclePerm differs for N=" + N);
+			int[] c = { 0, 0 };
+			forEachCycle(perm, (start, length) -> {
+				if (start != list.get(c[0])[0] || length != list.get(c[0]).length)
+					throw new AssertionError("forEachCycle differs for N=" + N);
+				c[0]++;
+			});
+			if (c[0] != list.size())
+				throw new AssertionError("forEachCycle missed cycles for N=" + N);
+		}
+		System.out.println("Cycles OK");
+
+		final int N = 10_000_000;
+		int[] random = getPermutation(N);
+		shuffle(random);
+		int[] swaps = getPermutation(N);
+		for (int i = 0; i + 1 < N; i += 2) { swaps[i] = i + 1; swaps[i + 1] = i; }
+		for (int[] perm : new int[][] { random, swaps }) {
+			long list = 0, compact = 0, visit = 0;
+			long[] sum = { 0 };
+			for (int run = 0; run < 2; run++) {
+				long start = System.currentTimeMillis();
+				sum[0] += findCycles(perm).size();
+				list = System.currentTimeMillis() - start;
+				start = System.currentTimeMillis();
+				sum[0] += findCyclesCompact(perm).count();
+				compact = System.currentTimeMillis() - start;
+				start = System.currentTimeMillis();
+				forEachCycle(perm, (first, length) -> sum[0] += length);
+				visit = System.currentTimeMillis() - start;
+			}
+			System.out.printf("%s: findCycles %d ms, findCyclesCompact %d ms, forEachCycle %d ms%n",
+					perm == random ? "random" : "transpositions", list, compact, visit);
+		}
+	}
+
+	/**
+	 * Checks compose(), inverse() and power() (and their parallel version) against plain loops:
+	 * power(p, k) must be k compositions, power(p, -k) the inverse of power(p, k),
+	 * and power(p, order) the identity. Then times them on 10M elements.
+	 */
+	public static void testOps() {
+		ForkJoinPool pool = new ForkJoinPool(4);  // more threads than cores is fine, it's only to split the work
+		for (int N : new int[] { 0, 1, 2, 10, 1000, 300_000 }) {
+			int[] p = getPermutation(N);
+			shuffle(p);
+			int[] q = getPermutation(N);
+			shuffle(q);
+			int[] id = getPermutation(N);
+			int[] pq = new int[N];
+			for (int i = 0; i < N; i++) pq[i] = p[q[i]];
+			if (!Arrays.equals(pq, compose(p, q)) || !Arrays.equals(pq, PermutationOps.compose(p, q, pool)))
+				throw new AssertionError("compose differs for N=" + N);
+			if (!Arrays.equals(id, compose(p, inverse(p))) || !Arrays.equals(inverse(p), PermutationOps.inverse(p, pool)))
+				throw new AssertionError("inverse differs for N=" + N);
+			int[] pk = id;
+			for (int k = 0; k <= 5; k++, pk = compose(p, pk)) {
+				if (!Arrays.equals(pk, power(p, k)) || !Arrays.equals(pk, PermutationOps.power(p, k, pool)))
+					throw new AssertionError("power(p, " + k + ") differs for N=" + N);
+				if (!Arrays.equals(inverse(pk), power(p, -k)))
+					throw new AssertionError("power(p, -" + k + ") differs for N=" + N);
+			}
+			// order = lcm of the cycle lengths, as long as it fits
+			Cycles cycles = findCyclesCompact(p);
+			java.math.BigInteger order = java.math.BigInteger.ONE;
+			for (int c = 0; c < cycles.count(); c++) {
+				java.math.BigInteger len = java.math.BigInteger.valueOf(cycles.length(c));
+				order = order.multiply(len).divide(order.gcd(len));
+			}
+			if (order.bitLength() < 63 && !Arrays.equals(id, PermutationOps.power(p, order.longValue(), pool)))
+				throw new AssertionError("power(p, order) is not the identity for N=" + N);
+			long big = Long.MAX_VALUE - 3;  // p^big ∘ p^(7-big) = p^7
+			if (!Arrays.equals(power(p, 7), compose(PermutationOps.power(p, big, pool), power(p, 7 - big))))
+				throw new AssertionError("big powers disagree for N=" + N);
+		}
+		pool.shutdown();
+		System.out.println("Ops OK");
+
+		final int N = 10_000_000;
+		int[] p = getPermutation(N);
+		shuffle(p);
+		int[] q = getPermutation(N);
+		shuffle(q);
+		for (int run = 0; run < 2; run++) {
+			long t0 = System.currentTimeMillis();
+			compose(p, q);
+			long t1 = System.currentTimeMillis();
+			composeParallel(p, q);
+			long t2 = System.currentTimeMillis();
+			inverse(p);
+			long t3 = System.currentTimeMillis();
+			inverseParallel(p);
+			long t4 = System.currentTimeMillis();
+			power(p, 1_000_000_007L);
+			long t5 = System.currentTimeMillis();
+			powerParallel(p, 1_000_000_007L);
+			long t6 = System.currentTimeMillis();
+			if (run == 1)
+				System.out.printf("compose %d/%d ms, inverse %d/%d ms, power(p, 1e9+7) %d/%d ms (sequential/parallel)%n",
+						t1 - t0, t2 - t1, t3 - t2, t4 - t3, t5 - t4, t6 - t5);
+		}
+	}
+
+	/**
+	 * Property based checks of the parity functions, on random permutations of random sizes:
+	 * - parity(), parityParallel() (on a 4-thread pool), isEven(lehmer) and isEven(cycles) all agree
+	 * - swapping two elements flips the parity, and the parity of a composition is the sum of the parities
+	 * Also on a permutation of transpositions only. Then compares the duration on 10M elements.
+	 */
+	public static void testParity() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		SplittableRandom random = new SplittableRandom(17);
+		for (int run = 0; run < 300; run++) {
+			int N = run < 20 ? run : random.nextInt(run < 280 ? 2000 : 500_000);
+			int[] p = getPermutation(N);
+			shuffle(p);
+			int expected = parity(p);
+			if (isEven(lehmer(p)) != (expected == 0))
+				throw new AssertionError("isEven(lehmer) disagrees for N=" + N);
+			if (isEven(findCycles(p)) != (expected == 0) || isEven(findCyclesCompact(p)) != (expected == 0))
+				throw new AssertionError("isEven(cycles) disagrees for N=" + N);
+			if (Parity.parity(p, pool) != expected)
+				throw new AssertionError("parityParallel disagrees for N=" + N);
+			if (N < 2) continue;
+			int[] q = getPermutation(N);
+			shuffle(q);
+			if (parity(compose(p, q)) != (expected ^ parity(q)))
+				throw new AssertionError("parity of a composition for N=" + N);
+			int a = random.nextInt(N), b = random.nextInt(N - 1);
+			if (b >= a) b++;
+			int tmp = p[a]; p[a] = p[b]; p[b] = tmp;
+			if (parity(p) != (expected ^ 1) || Parity.parity(p, pool) != (expected ^ 1))
+				throw new AssertionError("a transposition doesn't flip the parity for N=" + N);
+		}
+		final int N = 10_000_000;
+		int[] swaps = getPermutation(N);
+		for (int i = 0; i + 1 < N; i += 4) { swaps[i] = i + 1; swaps[i + 1] = i; }
+		int expected = (N / 4 + (N % 4 >= 2 ? 1 : 0)) & 1;
+		if (parity(swaps) != expected || Parity.parity(swaps, pool) != expected)
+			throw new AssertionError("parity of transpositions");
+		pool.shutdown();
+		System.out.println("Parity OK");
+
+		int[] p = getPermutation(N);
+		shuffle(p);
+		for (int run = 0; run < 2; run++) {
+			long t0 = System.currentTimeMillis();
+			isEven(findCycles(p));
+			long t1 = System.currentTimeMillis();
+			parity(p);
+			long t2 = System.currentTimeMillis();
+			parityParallel(p);
+			long t3 = System.currentTimeMillis();
+			isEven(lehmer(p));
+			long t4 = System.currentTimeMillis();
+			if (run == 1)
+				System.out.printf("isEven(findCycles) %d ms, parity %d ms, parityParallel %d ms, isEven(lehmer) %d ms%n",
+						t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+		}
+	}
+
+	/**
+	 * Checks the parallel shuffle:
+	 * - the same seed gives the same permutation on 1 thread, on 4 threads and without a pool
+	 * - a chi-square test on the 120 permutations of 5 elements, with blocks of 1 and 2 elements
+	 *   so that almost everything goes through the merges (and with plain Fisher-Yates as a reference)
+	 * Then compares it with getPermutation() + shuffle() on 100M elements.
+	 */
+	public static void testShuffle() {
+		ForkJoinPool one = new ForkJoinPool(1), four = new ForkJoinPool(4);
+		for (int N : new int[] { 0, 1, 2, 3, 100, 70_000, 1_000_000 }) {
+			for (int leaf : new int[] { 1, 7, MergeShuffle.LEAF }) {
+				int[] a = new int[N], b = new int[N], c = new int[N];
+				MergeShuffle.shuffle(a, true, 42, leaf, one);
+				MergeShuffle.shuffle(b, true, 42, leaf, four);
+				MergeShuffle.shuffle(c, true, 42, leaf, null);
+				if (!Arrays.equals(a, b) || !Arrays.equals(a, c))
+					throw new AssertionError("not deterministic for N=" + N + " leaf=" + leaf);
+				int[] sorted = a.clone();
+				Arrays.sort(sorted);
+				if (!Arrays.equals(sorted, getPermutation(N)))
+					throw new AssertionError("not a permutation for N=" + N + " leaf=" + leaf);
+				int[] d = getPermutation(N);
+				MergeShuffle.shuffle(d, false, 42, leaf, four);
+				b = getPermutation(N);
+				MergeShuffle.shuffle(b, false, 42, leaf, null);
+				if (!Arrays.equals(d, b))
+					throw new AssertionError("shuffle not deterministic for N=" + N + " leaf=" + leaf);
+			}
+		}
+		one.shutdown();
+		four.shutdown();
+
+		// chi-square with 119 degrees of freedom: 99.9% of the values are below 172.4
+		final int N = 5, DRAWS = 600_000;
+		for (int leaf : new int[] { 1, 2, 0 }) {
+			long[] counts = new long[120];
+			int[] perm = new int[N];
+			for (int k = 0; k < DRAWS; k++) {
+				if (leaf == 0) {
+					perm = getPermutation(N);
+					shuffle(perm);
+				} else {
+					MergeShuffle.shuffle(perm, true, k, leaf, null);
+				}
+				counts[(int) rank64(perm)]++;
+			}
+			double expected = DRAWS / 120.0, chi2 = 0;
+			for (long c : counts)
+				chi2 += (c - expected) * (c - expected) / expected;
+			System.out.printf("%s: chi2 = %.1f%n", leaf == 0 ? "Fisher-Yates" : "MergeShuffle, blocks of " + leaf, chi2);
+			if (chi2 > 172.4)
+				throw new AssertionError("not uniform, chi2 = " + chi2);
+		}
+		System.out.println("Shuffle OK");
+
+		final int SIZE = 100_000_000;
+		for (int run = 0; run < 2; run++) {
+			long t0 = System.currentTimeMillis();
+			int[] perm = getPermutation(SIZE);
+			shuffle(perm);
+			long t1 = System.currentTimeMillis();
+			perm = null;
+			perm = randomPermutation(SIZE, 1);
+			long t2 = System.currentTimeMillis();
+			if (run == 1)
+				System.out.printf("%d elements: getPermutation+shuffle %d ms, randomPermutation %d ms%n",
+						SIZE, t1 - t0, t2 - t1);
+		}
+	}
+
+	/**
+	 * Checks PermutationEnumerator: every rank is seen exactly once, with the permutation unrank64() gives,
+	 * for all n! and for sub-ranges, on one thread and on four. Then times a whole enumeration.
+	 */
+	public static void testEnumerate() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int n : new int[] { 0, 1, 2, 5, 8, 10 }) {
+			long total = PermutationEnumerator.factorial(n);
+			for (long[] range : new long[][] { { 0, total }, { total / 3, total / 3 + total / 2 } }) {
+				for (ForkJoinPool p : new ForkJoinPool[] { null, pool }) {
+					BitFieldAtomic seen = new BitFieldAtomic((int) total);
+					java.util.concurrent.atomic.AtomicLong count = new java.util.concurrent.atomic.AtomicLong();
+					PermutationEnumerator.forRange(n, range[0], range[1], 100, (first, perms, k) -> {
+						int[] expected = new int[n];
+						for (int j = 0; j < k; j++) {
+							unrank64(first + j, n, expected);
+							if (!Arrays.equals(expected, 0, n, perms, j * n, (j + 1) * n) || !seen.trySet((int) (first + j)))
+								throw new AssertionError("wrong or repeated rank " + (first + j) + " for n=" + n);
+						}
+						count.addAndGet(k);
+					}, p);
+					if (count.get() != range[1] - range[0])
+						throw new AssertionError("missing permutations for n=" + n);
+				}
+			}
+		}
+		pool.shutdown();
+		System.out.println("Enumerate OK");
+
+		final int N = 11;
+		long[] sum = new long[1];
+		long start = System.currentTimeMillis();
+		PermutationEnumerator.forRange(N, 0, PermutationEnumerator.factorial(N), PermutationEnumerator.BATCH, (first, perms, k) -> {
+			long s = 0;
+			for (int j = 0; j < k * N; j += N) s += perms[j];
+			synchronized (sum) { sum[0] += s; }
+		}, null);
+		long seq = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		PermutationEnumerator.forEach(N, (first, perms, k) -> {
+			long s = 0;
+			for (int j = 0; j < k * N; j += N) s += perms[j];
+			synchronized (sum) { sum[0] += s; }
+		});
+		long par = System.currentTimeMillis() - start;
+		System.out.printf("%d! permutations: %d ms on one thread, %d ms on the common pool (%d threads)%n",
+				N, seq, par, ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/**
+	 * Checks that a ToggleArrayFile reopens in the state of its last checkpoint, changes made after it
+	 * being lost, against a ToggleArray given the same changes. Then times creating, checkpointing and
+	 * reopening 2^30 toggles.
+	 */
+	public static void testPersist() {
+		try {
+			java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("toggles");
+			java.nio.file.Path file = dir.resolve("toggles.bin");
+			SplittableRandom rng = new SplittableRandom(20);
+			for (int n : new int[] { 1, 63, 64, 65, 511, 512, 513, 100_000 }) {
+				java.nio.file.Files.deleteIfExists(file);
+				ToggleArray reference = new ToggleArray(n);
+				ToggleArrayFile toggles = ToggleArrayFile.open(file, n);
+				for (int round = 0; round < 3; round++) {
+					for (int k = 0; k < 2 * n; k++) {
+						if (reference.downCount() != 0 && (reference.upCount() == 0 || rng.nextBoolean())) {
+							int d = rng.nextInt(reference.downCount());
+							if (reference.setUp(d) != toggles.setUp(d))
+								throw new AssertionError("setUp(" + d + ") differs, n=" + n);
+						} else {
+							int u = rng.nextInt(reference.upCount());
+							if (reference.setDown(u) != toggles.setDown(u))
+								throw new AssertionError("setDown(" + u + ") differs, n=" + n);
+						}
+					}
+					toggles.checkpoint();
+					int[] saved = new int[n];           // numULI() of each toggle at the checkpoint
+					for (int i = 0; i < n; i++)
+						saved[i] = reference.numULI(i);
+					for (int k = 0; k < n / 2 && toggles.downCount() != 0; k++)  // lost: never checkpointed
+						toggles.setUp(rng.nextInt(toggles.downCount()));
+					toggles = ToggleArrayFile.open(file, n);
+					if (toggles.upCount() != reference.upCount())
+						throw new AssertionError("upCount " + toggles.upCount() + " != " + reference.upCount() + " for n=" + n);
+					for (int i = 0; i < n; i++)
+						if (toggles.numULI(i) != saved[i])
+							throw new AssertionError("toggle " + i + " differs after reopening, n=" + n);
+					for (int k = 0; k < toggles.upCount(); k++)
+						if (toggles.getUpIndex(k) != reference.getUpIndex(k))
+							throw new AssertionError("getUpIndex(" + k + ") differs after reopening, n=" + n);
+				}
+			}
+			try {
+				ToggleArrayFile.open(file, 99_999);
+				throw new AssertionError("opened with the wrong size");
+			} catch (java.io.IOException expected) {
+				// ok
+			}
+			System.out.println("Persist OK");
+
+			final int N = 1 << 30;
+			java.nio.file.Files.deleteIfExists(file);
+			long start = System.currentTimeMillis();
+			ToggleArrayFile toggles = ToggleArrayFile.open(file, N);
+			long create = System.currentTimeMillis() - start;
+			for (int k = 0; k < 1_000_000; k++)
+				toggles.setUp(rng.nextInt(toggles.downCount()));
+			start = System.currentTimeMillis();
+			toggles.checkpoint();
+			long checkpoint = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			toggles = ToggleArrayFile.open(file, N);
+			long reopen = System.currentTimeMillis() - start;
+			int up = toggles.upCount();
+			System.out.printf("%d toggles (%d MB): create %d ms, checkpoint %d ms, reopen %d ms (%d up)%n",
+					N, java.nio.file.Files.size(file) >> 20, create, checkpoint, reopen, up);
+			java.nio.file.Files.delete(file);
+			java.nio.file.Files.delete(dir);
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		}
+	}
+
 	public static int[] toIntArray(String[] s) throws NumberFormatException {
 		int[] r = new int[s.length];
 		for (int i = 0; i < s.length; i++)
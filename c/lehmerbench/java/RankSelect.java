@@ -0,0 +1,119 @@
+/**
+ * The rank/select index behind a ToggleArray.
+ * <p>A RankSelect tracks n toggles (up or down) and answers, in O(log n) or better:
+ * - rank: how many toggles are up to the left of an absolute index
+ * - select: the absolute index of the k-th up (or down) toggle
+ * ToggleArray only delegates to it, so the memory layout can be changed without
+ * touching the algorithms written on top of ToggleArray (lehmer, unlehmer...).
+ *
+ * Known (provided) implementations are:
+ * RankSelectTree: Arndt's centered binary tree (bsearch[]), the original layout.
+ * RankSelectFenwick: a Fenwick tree (binary indexed tree) of up counts.
+ * RankSelectBlocked: 64-bit words grouped in cache-line blocks, with one counter per block.
+ * RankSelectEytzinger: a search tree stored in breadth-first order.
+ * RankSelectDirect: same as RankSelectBlocked, but off-heap.
+ *
+ * Indexing follows ToggleArray: k is a relative index (k-th up or down toggle, counting from 0)
+ * and i is an absolute index in the toggle array. No range checks are done here,
+ * ToggleArray takes care of them.
+ *
+ * @author drax
+ */
+public interface RankSelect {
+
+	/**
+	 * The available layouts.
+	 * The default one can be picked with -Drankselect=fenwick (or tree, blocked...)
+	 */
+	public enum Layout {
+		TREE, FENWICK, BLOCKED, EYTZINGER, DIRECT;
+
+		public static final Layout DEFAULT = fromProperty();
+
+		/**
+		 * The layout named by -Drankselect, TREE when it is missing or names no layout.
+		 */
+		private static Layout fromProperty() {
+			String name = System.getProperty("rankselect", "tree");
+			try {
+				return valueOf(name.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Unknown -Drankselect=" + name + ", expected one of "
+						+ java.util.Arrays.toString(values()).toLowerCase() + ": using tree");
+				return TREE;
+			}
+		}
+
+		/**
+		 * Creates an index of this layout, with all toggles down.
+		 * @param n the number of toggles
+		 * @return a new index
+		 */
+		public RankSelect create(int n) {
+			switch (this) {
+				case FENWICK:   return new RankSelectFenwick(n);
+				case BLOCKED:   return new RankSelectBlocked(n);
+				case EYTZINGER: return new RankSelectEytzinger(n);
+				case DIRECT:    return new RankSelectDirect(n);
+				default:        return new RankSelectTree(n);
+			}
+		}
+	}
+
+	/**
+	 * The number of toggles.
+	 * @return the size
+	 */
+	public int size();
+
+	/**
+	 * Total number of Up toggles.
+	 * @return up count
+	 */
+	public int upCount();
+
+	/**
+	 * Raises all toggles.
+	 */
+	public void allUp();
+
+	/**
+	 * Lowers all toggles.
+	 */
+	public void allDown();
+
+	/**
+	 * The state of the toggle at absolute index i.
+	 * @param i the absolute index
+	 * @return true if it's up
+	 */
+	public boolean get(int i);
+
+	/**
+	 * The absolute index of the k-th Up toggle.
+	 * @param k 0 <= k < upCount()
+	 * @return the absolute index
+	 */
+	public int getUpIndex(int k);
+
+	/**
+	 * Sets up the k-th Down toggle and return its index.
+	 * @param k 0 <= k < size() - upCount()
+	 * @return the index of the raised toggle
+	 */
+	public int setUp(int k);
+
+	/**
+	 * Sets down the k-th Up toggle and return its index.
+	 * @param k 0 <= k < upCount()
+	 * @return the index of the lowered toggle
+	 */
+	public int setDown(int k);
+
+	/**
+	 * Counts how many toggles are Up to the left of absolute index i (exclusive).
+	 * @param i 0 <= i < size()
+	 * @return the number of up toggles in [0, i[
+	 */
+	public int numULE(int i);
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * A cache friendly RankSelect: the toggles are stored as 64-bit words, grouped in blocks of
+ * 8 words (512 bits, one cache line). Each block has one counter (its number of Up toggles)
+ * and those counters are kept in a small Fenwick tree.
+ * <p>At 10M toggles, the block counters weigh 80 KB and stay in the CPU cache, so any
+ * operation costs a few cached steps in the counters, plus a single cache line of toggles
+ * which is finished with Long.bitCount.
+ * <p>Note: the padding bits after the last toggle are always down. They are never reached
+ * by a select since they are to the right of every valid toggle.
+ *
+ * @see RankSelectFenwick
+ * @author drax
+ */
+public class RankSelectBlocked implements RankSelect {
+	static final int WORD_SHIFT = 6;                  // 64 bits per word
+	static final int BLOCK_SHIFT = 9;                 // 512 bits per block
+	static final int BLOCK_WORDS = 1 << (BLOCK_SHIFT - WORD_SHIFT);
+
+	private final int n;
+	private final long[] words;       // the toggles, padded to a whole block
+	private final int[] blocks;       // 1-based Fenwick tree of the Up count of each block
+	private final int nbBlocks;
+	private final int topStep;        // highest power of 2 <= nbBlocks
+	private int upCount;
+
+	public RankSelectBlocked(int n) {
+		this.n = n;
+		nbBlocks = ((n - 1) >> BLOCK_SHIFT) + 1;
+		words = new long[nbBlocks * BLOCK_WORDS];
+		blocks = new int[nbBlocks + 1];
+		topStep = Integer.highestOneBit(nbBlocks);
+		allDown();
+	}
+
+	/**
+	 * Finds the k-th set bit of a word.
+	 * @param w the word
+	 * @param k 0 <= k < Long.bitCount(w)
+	 * @return the position of that bit, from the lowest bit
+	 */
+	static int selectInWord(long w, int k) {
+		int base = 0;
+		int c = Integer.bitCount((int) w);
+		if (k >= c) { k -= c; w >>>= 32; base = 32; }
+		c = Integer.bitCount((int) w & 0xFFFF);
+		if (k >= c) { k -= c; w >>>= 16; base += 16; }
+		c = Integer.bitCount((int) w & 0xFF);
+		if (k >= c) { k -= c; w >>>= 8; base += 8; }
+		while (k-- != 0) w &= w - 1;
+		return base + Long.numberOfTrailingZeros(w);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public int upCount() {
+		return upCount;
+	}
+
+	/**
+	 * <p>Complexity: O(n/64), the block tree being built bottom-up.
+	 */
+	@Override
+	public void allUp() {
+		upCount = n;
+		int used = ((n - 1) >> WORD_SHIFT) + 1;
+		Arrays.fill(words, 0, used, -1L);
+		Arrays.fill(words, used, words.length, 0L);
+		if ((n & 63) != 0)
+			words[used - 1] = (1L << n) - 1;
+		for (int b = 1; b <= nbBlocks; b++)
+			blocks[b] = (b == nbBlocks) ? n - ((nbBlocks - 1) << BLOCK_SHIFT) : 1 << BLOCK_SHIFT;
+		for (int p = 1; p <= nbBlocks; p++) {
+			int parent = p + (p & -p);
+			if (parent <= nbBlocks)
+				blocks[parent] += blocks[p];
+		}
+	}
+
+	@Override
+	public void allDown() {
+		upCount = 0;
+		Arrays.fill(words, 0L);
+		Arrays.fill(blocks, 0);
+	}
+
+	@Override
+	public boolean get(int i) {
+		return (words[i >>> WORD_SHIFT] & (1L << i)) != 0;
+	}
+
+	private void add(int i, int delta) {
+		for (int p = (i >>> BLOCK_SHIFT) + 1; p <= nbBlocks; p += p & -p)
+			blocks[p] += delta;
+	}
+
+	@Override
+	public int getUpIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= nbBlocks && blocks[next] <= k) {
+				pos = next;
+				k -= blocks[next];
+			}
+		}
+		int w = pos * BLOCK_WORDS;
+		while (true) {
+			int c = Long.bitCount(words[w]);
+			if (k < c) break;
+			k -= c;
+			w++;
+		}
+		return (w << WORD_SHIFT) + selectInWord(words[w], k);
+	}
+
+	/**
+	 * Same as getUpIndex() but counting Down toggles.
+	 */
+	private int getDownIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= nbBlocks) {
+				int down = (step << BLOCK_SHIFT) - blocks[next];
+				if (down <= k) {
+					pos = next;
+					k -= down;
+				}
+			}
+		}
+		int w = pos * BLOCK_WORDS;
+		while (true) {
+			int c = Long.bitCount(~words[w]);
+			if (k < c) break;
+			k -= c;
+			w++;
+		}
+		return (w << WORD_SHIFT) + selectInWord(~words[w], k);
+	}
+
+	@Override
+	public int setUp(int k) {
+		int i = getDownIndex(k);
+		upCount++;
+		words[i >>> WORD_SHIFT] |= 1L << i;
+		add(i, 1);
+		return i;
+	}
+
+	@Override
+	public int setDown(int k) {
+		int i = getUpIndex(k);
+		upCount--;
+		words[i >>> WORD_SHIFT] &= ~(1L << i);
+		add(i, -1);
+		return i;
+	}
+
+	@Override
+	public int numULE(int i) {
+		int b = i >>> BLOCK_SHIFT;
+		int res = 0;
+		for (int p = b; p > 0; p -= p & -p)
+			res += blocks[p];
+		int w = i >>> WORD_SHIFT;
+		for (int j = b * BLOCK_WORDS; j < w; j++)
+			res += Long.bitCount(words[j]);
+		return res + Long.bitCount(words[w] & ((1L << i) - 1));
+	}
+}
@@ -0,0 +1,180 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The same layout as RankSelectBlocked (64-bit words, one counter per 512-bit block, counters
+ * in a Fenwick tree) but entirely off-heap: the toggles are a BitFieldDirect and the counters a
+ * direct IntBuffer.
+ * <p>For n toggles, that's n/8 bytes of toggles and n/128 bytes of counters, so 2^31 toggles
+ * take about 270 MB outside of the Java heap, where RankSelectTree would need 8 GB for bsearch[].
+ *
+ * @see RankSelectBlocked
+ * @author drax
+ */
+public class RankSelectDirect implements RankSelect {
+	private static final int WORD_SHIFT = RankSelectBlocked.WORD_SHIFT;
+	private static final int BLOCK_SHIFT = RankSelectBlocked.BLOCK_SHIFT;
+	private static final int BLOCK_WORDS = RankSelectBlocked.BLOCK_WORDS;
+
+	private final int n;
+	private final BitFieldDirect toggles;
+	private final IntBuffer blocks;   // 1-based Fenwick tree of the Up count of each block
+	private final int nbBlocks;
+	private final int topStep;
+	private int upCount;
+
+	public RankSelectDirect(int n) {
+		this(n, 0, ByteBuffer.allocateDirect(blocksBytes(n)), ByteBuffer.allocateDirect(togglesBytes(n)));
+		allDown();
+	}
+
+	/**
+	 * Uses existing storage (see ToggleArrayFile), its content is kept as is.
+	 * @param n the number of toggles
+	 * @param upCount the number of Up toggles in the storage
+	 * @param blocks blocksBytes(n) bytes from its position: the Fenwick tree, in native order
+	 * @param toggles togglesBytes(n) bytes from its position: the toggles, in native order
+	 */
+	RankSelectDirect(int n, int upCount, ByteBuffer blocks, ByteBuffer toggles) {
+		this.n = n;
+		this.upCount = upCount;
+		nbBlocks = ((n - 1) >> BLOCK_SHIFT) + 1;
+		this.toggles = new BitFieldDirect(n, toggles);
+		this.blocks = blocks.order(ByteOrder.nativeOrder()).asIntBuffer();
+		topStep = Integer.highestOneBit(nbBlocks);
+	}
+
+	/**
+	 * The size in bytes of the block counters of n toggles.
+	 */
+	static int blocksBytes(int n) {
+		return ((((n - 1) >> BLOCK_SHIFT) + 1) + 1) << 2;
+	}
+
+	/**
+	 * The size in bytes of n toggles (a single BitFieldDirect segment, n being an int).
+	 */
+	static int togglesBytes(int n) {
+		return (int) (BitFieldDirect.wordCount(n) << 3);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public int upCount() {
+		return upCount;
+	}
+
+	@Override
+	public void allUp() {
+		upCount = n;
+		toggles.set();
+		for (int b = 1; b <= nbBlocks; b++)
+			blocks.put(b, (b == nbBlocks) ? n - ((nbBlocks - 1) << BLOCK_SHIFT) : 1 << BLOCK_SHIFT);
+		for (int p = 1; p <= nbBlocks; p++) {
+			int parent = p + (p & -p);
+			if (parent <= nbBlocks)
+				blocks.put(parent, blocks.get(parent) + blocks.get(p));
+		}
+	}
+
+	@Override
+	public void allDown() {
+		upCount = 0;
+		toggles.clear();
+		for (int p = 0; p <= nbBlocks; p++)
+			blocks.put(p, 0);
+	}
+
+	@Override
+	public boolean get(int i) {
+		return toggles.get(i);
+	}
+
+	private void add(int i, int delta) {
+		for (int p = (i >>> BLOCK_SHIFT) + 1; p <= nbBlocks; p += p & -p)
+			blocks.put(p, blocks.get(p) + delta);
+	}
+
+	@Override
+	public int getUpIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= nbBlocks) {
+				int c = blocks.get(next);
+				if (c <= k) {
+					pos = next;
+					k -= c;
+				}
+			}
+		}
+		int w = pos * BLOCK_WORDS;
+		while (true) {
+			int c = Long.bitCount(toggles.word(w));
+			if (k < c) break;
+			k -= c;
+			w++;
+		}
+		return (w << WORD_SHIFT) + RankSelectBlocked.selectInWord(toggles.word(w), k);
+	}
+
+	/**
+	 * Same as getUpIndex() but counting Down toggles.
+	 */
+	private int getDownIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= nbBlocks) {
+				int down = (step << BLOCK_SHIFT) - blocks.get(next);
+				if (down <= k) {
+					pos = next;
+					k -= down;
+				}
+			}
+		}
+		int w = pos * BLOCK_WORDS;
+		while (true) {
+			int c = Long.bitCount(~toggles.word(w));
+			if (k < c) break;
+			k -= c;
+			w++;
+		}
+		return (w << WORD_SHIFT) + RankSelectBlocked.selectInWord(~toggles.word(w), k);
+	}
+
+	@Override
+	public int setUp(int k) {
+		int i = getDownIndex(k);
+		upCount++;
+		toggles.set(i);
+		add(i, 1);
+		return i;
+	}
+
+	@Override
+	public int setDown(int k) {
+		int i = getUpIndex(k);
+		upCount--;
+		toggles.clear(i);
+		add(i, -1);
+		return i;
+	}
+
+	@Override
+	public int numULE(int i) {
+		int b = i >>> BLOCK_SHIFT;
+		int res = 0;
+		for (int p = b; p > 0; p -= p & -p)
+			res += blocks.get(p);
+		int w = i >>> WORD_SHIFT;
+		for (int j = b * BLOCK_WORDS; j < w; j++)
+			res += Long.bitCount(toggles.word(j));
+		return res + Long.bitCount(toggles.word(w) & ((1L << i) - 1));
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * A RankSelect storing the search tree in breadth-first order (Eytzinger layout).
+ * <p>The toggles are padded to P, the next power of 2. Node k (1-based) has its children
+ * at 2k and 2k+1, and holds the number of Up toggles in the left half of its interval.
+ * The leaves are the toggles themselves (leaf P + i is toggle i), so they are not stored in tree[].
+ *
+ * <p>Let's take the same example as RankSelectTree, toggles = [0, 0, 1, 1, 1, 1, 0], so P = 8:
+ *
+ *              1:[0,7]
+ *           /           \
+ *      2:[0,3]         3:[4,7]
+ *      /     \         /     \
+ *  4:[0,1] 5:[2,3] 6:[4,5] 7:[6,7]
+ *
+ * tree[1] = #up in [0,3] = 2, tree[2] = #up in [0,1] = 0, tree[3] = #up in [4,5] = 2, and so on.
+ * That gives tree = [unused, 2, 0, 2, 0, 1, 1, 0].
+ *
+ * <p>Why bother? With bsearch[], the first nodes of every search are spread over the whole
+ * array (n/2, n/4, 3n/4...), so each step is a cache miss. Here, the first levels are packed
+ * at the beginning of tree[] (the first 4 levels fit in one cache line) and stay in cache.
+ * Also, numULE() follows the bits of i, so its loads don't depend on each other and the
+ * CPU can have them all in flight at once.
+ * <p>Note: Java has no software prefetch, so grandchildren are not prefetched explicitly.
+ * <p>Padding toggles are down but they are never reached by a select since they are
+ * to the right of every valid toggle.
+ *
+ * @author drax
+ */
+public class RankSelectEytzinger implements RankSelect {
+	private final int n;
+	private final int leaves;        // P, a power of 2 >= n
+	private final int[] tree;        // tree[k] = #up in the left half of node k, tree[0] is unused
+	private final BitField toggles;
+	private int upCount;
+
+	public RankSelectEytzinger(int n) {
+		this.n = n;
+		leaves = n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+		tree = new int[leaves];
+		toggles = new BitFieldDrax(n);
+		allDown();
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public int upCount() {
+		return upCount;
+	}
+
+	/**
+	 * The left half of a node is all up, except near the end where the padding starts.
+	 * <p>Complexity: O(P)
+	 */
+	@Override
+	public void allUp() {
+		upCount = n;
+		toggles.set();
+		for (int level = 1, width = leaves; level < leaves; level <<= 1, width >>= 1) {
+			int half = width >> 1;
+			for (int j = 0; j < level; j++) {
+				int left = n - j * width;
+				tree[level + j] = left <= 0 ? 0 : Math.min(half, left);
+			}
+		}
+	}
+
+	@Override
+	public void allDown() {
+		upCount = 0;
+		toggles.clear();
+		Arrays.fill(tree, 0);
+	}
+
+	@Override
+	public boolean get(int i) {
+		return toggles.get(i);
+	}
+
+	@Override
+	public int getUpIndex(int k) {
+		int node = 1;
+		while (node < leaves) {
+			int c = tree[node];
+			if (k < c) {
+				node <<= 1;
+			} else {
+				k -= c;
+				node = (node << 1) + 1;
+			}
+		}
+		return node - leaves;
+	}
+
+	@Override
+	public int setUp(int k) {
+		upCount++;
+		int node = 1;
+		int half = leaves >> 1;
+		while (node < leaves) {
+			int down = half - tree[node];
+			if (k < down) {
+				tree[node]++;
+				node <<= 1;
+			} else {
+				k -= down;
+				node = (node << 1) + 1;
+			}
+			half >>= 1;
+		}
+		int i = node - leaves;
+		toggles.set(i);
+		return i;
+	}
+
+	@Override
+	public int setDown(int k) {
+		upCount--;
+		int node = 1;
+		while (node < leaves) {
+			int c = tree[node];
+			if (k < c) {
+				tree[node]--;
+				node <<= 1;
+			} else {
+				k -= c;
+				node = (node << 1) + 1;
+			}
+		}
+		int i = node - leaves;
+		toggles.clear(i);
+		return i;
+	}
+
+	@Override
+	public int numULE(int i) {
+		int res = 0;
+		int node = 1;
+		for (int half = leaves >> 1; half != 0; half >>= 1) {
+			int right = (i & half) != 0 ? 1 : 0;
+			res += tree[node] & -right;
+			node = (node << 1) + right;
+		}
+		return res;
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * A RankSelect backed by a Fenwick tree (binary indexed tree).
+ * <p>tree[p] (1-based) holds the number of Up toggles in ]p - lowbit(p), p], where lowbit(p) = p & -p.
+ * So a prefix count (rank) walks down the bits of i, and select is a top-down descent
+ * using powers of two, like a binary search that never needs to compare with the toggles.
+ * <p>Compared to RankSelectTree, the first steps of a descent always hit the same few
+ * cells (n/2, n/4, 3n/4...), which stay in cache. The toggles themselves are kept in a
+ * BitField only to answer get().
+ *
+ * @author drax
+ */
+public class RankSelectFenwick implements RankSelect {
+	private final int n;
+	private final int[] tree;        // 1-based Fenwick tree of up counts, tree[0] is unused
+	private final int topStep;       // highest power of 2 <= n, first step of a descent
+	private final BitField toggles;
+	private int upCount;
+
+	public RankSelectFenwick(int n) {
+		this.n = n;
+		tree = new int[n + 1];
+		topStep = Integer.highestOneBit(n);
+		toggles = new BitFieldDrax(n);
+		allDown();
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public int upCount() {
+		return upCount;
+	}
+
+	/**
+	 * Every node covers exactly lowbit(p) toggles, all up.
+	 * <p>Complexity: O(n)
+	 */
+	@Override
+	public void allUp() {
+		upCount = n;
+		toggles.set();
+		for (int p = 1; p <= n; p++)
+			tree[p] = p & -p;
+	}
+
+	@Override
+	public void allDown() {
+		upCount = 0;
+		toggles.clear();
+		Arrays.fill(tree, 0);
+	}
+
+	@Override
+	public boolean get(int i) {
+		return toggles.get(i);
+	}
+
+	/**
+	 * Adds delta to every node covering absolute index i.
+	 */
+	private void add(int i, int delta) {
+		for (int p = i + 1; p <= n; p += p & -p)
+			tree[p] += delta;
+	}
+
+	@Override
+	public int getUpIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= n && tree[next] <= k) {
+				pos = next;
+				k -= tree[next];
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Same as getUpIndex() but counting Down toggles.
+	 * During the descent, pos is always a multiple of 2*step so node pos+step
+	 * covers exactly step toggles.
+	 */
+	private int getDownIndex(int k) {
+		int pos = 0;
+		for (int step = topStep; step != 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= n) {
+				int down = step - tree[next];
+				if (down <= k) {
+					pos = next;
+					k -= down;
+				}
+			}
+		}
+		return pos;
+	}
+
+	@Override
+	public int setUp(int k) {
+		int i = getDownIndex(k);
+		upCount++;
+		toggles.set(i);
+		add(i, 1);
+		return i;
+	}
+
+	@Override
+	public int setDown(int k) {
+		int i = getUpIndex(k);
+		upCount--;
+		toggles.clear(i);
+		add(i, -1);
+		return i;
+	}
+
+	@Override
+	public int numULE(int i) {
+		int res = 0;
+		for (int p = i; p > 0; p -= p & -p)
+			res += tree[p];
+		return res;
+	}
+}
@@ -14,8 +14,6 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-import java.util.Arrays;
-
 /**
  * ToggleArray:
  * An implementation of the LRArray found at p166 http://www.jjj.de/fxt/#fxtbook
@@ -37,49 +35,11 @@ import java.util.Arrays;
  * BitFieldDrax: custom implementation of a BitSet with no checks, easy to port to another language.
  * Performance: BitFieldDrax is the fastest, followed by BitFieldSet, then BitFieldBoolean.
  *
- * About the ToggleArray structure:
- * bsearch is a binary tree that is browsed using binary search.
- * Each node correspond to one index and holds the number of up switches to its left (including itself).
- * Here, "left" means in its subtree, not in the toggles array.
- *
- * Let's take an example with n=7 switches.
- * The first interval is [0, L] where L=n-1, with a middle point at L/2=3.
- * The interval (or subtree) to its left is [0, L/2[ and the one to its right is [L/2, L]. And so on.
- * The tree representation of the indices is:
- *
- *       3
- *      / \
- *    /     \
- *   1       5
- *  / \     / \
- * 0   2   4   6
- *
- * For the root node (3), bsearch[3] = # of up switches in [0, 3]
- * For 1, it's #up switches in [0, 1]
- * For 2, it's [2, 2]
- * For 0, it's [0, 0]
- * For 5, it's [4, 5]
- * So, in the case of node 3, we count all the up switches in its left subtree,
- *   1
- *  / \
- * 0   2
- * plus 3 itself.
- *
- * Now let's say toggles is [0, 0, 1, 1, 1, 1, 0]
- * Replacing the nodes index with + (up) or - (down), we get the following tree:
- *       +
- *      / \
- *    /     \
- *   -       +
- *  / \     / \
- * -   +   +   -
- *
- * The root is up (+) and its left subtree contains another + (at index 2) so the total number of + is 2.
- * This means bsearch[3] = 2.
- * The node at index 1 (the root of the first left subtree) is a - and there's only one node to its left (index 0)
- * which is also a -, so there is nothing up to the left of index 1 -> bsearch[1] = 0.
- * Last example with node 5, it is a + and there's another + to its left for a total of 2 -> bsearch[5] = 2.
- * Now it's easy to fill bsearch and we get [0, 0, 1, 2, 1, 2, 0]
+ * About the layout:
+ * ToggleArray delegates the actual counting to a RankSelect index (see RankSelect for the
+ * provided layouts). The default one is RankSelectTree, which is Arndt's binary tree bsearch[].
+ * Another layout can be chosen when constructing the ToggleArray, or globally with
+ * -Drankselect=fenwick (or blocked) so that code using new ToggleArray(n) does not have to change.
  *
  * Important: ToggleArray has a special way of indexing/counting the up/down toggles.
  * Let's say the toggles are [0=down, 1=up, 2=down, 3=up]
@@ -91,41 +51,48 @@ import java.util.Arrays;
  * So here, we call 1=up the absolute index 1 (that's the index in the toggle array) or relative up-index 0
  * (because that's the first up toggle from the left).
  *
- * Another note because that structure may be a bit confusing at first:
- * numULI(5) returns the number of up switches to the left of 5 (included)
- * One may think that's what bsearch[5] is, but it's not.
- * bsearch[5] is the number of up switches to the left of 5 "in the subtree which root is 5".
- * So, to get the correct answer, numULI(5) should take bsearch[5] + bsearch[3]
- * bsearch[5] covers the indices in [4, 5] range, and bsearch[3] covers [0, 3] so the union is [0, 5] and the intersection is [].
- * These numXXX() functions are achieved using binary search. In fact, only numULE() is implemented, the other functions
- * just deduce the result from it.
+ * Only numULE() is asked to the index, the other numXXX() functions just deduce the result from it.
  *
  * @author Jörg Arndt
  * @author Draxar
  */
 public class ToggleArray {
-	/**
-	 * For any interval [a, b] the element bsearch[t] where t = (a + b)/2
-	 * contains the number of Up toggles in [a, t].
-	 */
-	private final int[] bsearch;     // Up indices Left (inclusive) in bsearch interval
-	private final BitField toggles;  // A representation of the toggles
-	private int upCount;             // number of Up toggles
-
+	private final RankSelect index;  // The counts and the state of the toggles
 
 	/**
 	 * Constructs a ToggleArray of size n where all toggles are down (false).
-	 * There are 3 structures we can use as a BitField:
-	 * - BitFieldBoolean, a regular boolean[], which gives 3830 ms for a given computation (size 10M)
-	 * - BitFieldSet, Java's bitfield, which gives 3870 ms for the same computation
-	 * - BitFieldDrax, my own bitfield, which gives 3550 ms and wins them all :/
+	 * The index uses the default layout (see RankSelect.Layout.DEFAULT).
 	 * <p>Complexity: O(n)
 	 * @param n the size (number of toggles)
 	 */
 	public ToggleArray(int n) {
-		bsearch = new int[n];
-		toggles = new BitFieldDrax(n);
-		allDown();
+		this(RankSelect.Layout.DEFAULT.create(n));
+	}
+
+	/**
+	 * Constructs a ToggleArray of size n using the given layout.
+	 * @param n the size (number of toggles)
+	 * @param layout the layout of the rank/select index
+	 */
+	public ToggleArray(int n, RankSelect.Layout layout) {
+		this(layout.create(n));
+	}
+
+	/**
+	 * Constructs a ToggleArray on top of the given index.
+	 * The state of the index is kept as is.
+	 * @param index the rank/select index
+	 */
+	public ToggleArray(RankSelect index) {
+		this.index = index;
+	}
+
+	/**
+	 * The number of toggles.
+	 * @return the size
+	 */
+	public int size() {
+		return index.size();
 	}
 
 	/**
@@ -133,7 +100,7 @@ public class ToggleArray {
 	 * @return up count
 	 */
 	public int upCount() {
-		return upCount;
+		return index.upCount();
 	}
 
 	/**
@@ -141,40 +108,21 @@ public class ToggleArray {
 	 * @return down count
 	 */
 	public int downCount() {
-		return bsearch.length - upCount;
-	}
-
-	/**
-	 * Recursively init bsearch for an "all up" array.
-	 * @param a start of the bsearch interval (inclusive)
-	 * @param b end of the bsearch interval (inclusive)
-	 */
-	private void init(int a, int b) {
-		if ((b - a) != 0) {
-			int t = (b + a)/2;
-			init(a, t);
-			init(t + 1, b);
-		}
-		bsearch[b] = b - a + 1;
+		return index.size() - index.upCount();
 	}
 
 	/**
 	 * Raises all toggles.
 	 */
 	public final void allUp() {
-		upCount = bsearch.length;
-		toggles.set();
-		init(0, bsearch.length - 1);
-		bsearch[bsearch.length - 1] = 1;
+		index.allUp();
 	}
 
 	/**
 	 * Lowers all toggles.
 	 */
 	public final void allDown() {
-		upCount = 0;
-		toggles.clear();
-		Arrays.fill(bsearch, 0);
+		index.allDown();
 	}
 
 	/**
@@ -184,20 +132,7 @@ public class ToggleArray {
 	 */
 	public int getUpIndex(int k) {
 		if (k >= upCount()) return 0;
-		int a = 0;
-		int b = bsearch.length - 1;
-		while (true) {
-			int t = (b + a) / 2;
-			if (bsearch[t] == k + 1 && toggles.get(t)) {
-				return t;
-			}
-			if (bsearch[t] > k) {
-				b = t;
-			} else {
-				a = t + 1;
-				k -= bsearch[t];
-			}
-		}
+		return index.getUpIndex(k);
 	}
 
 	/**
@@ -207,24 +142,7 @@ public class ToggleArray {
 	 */
 	public int setDown(int k) {
 		if (k >= upCount()) return 0;
-		upCount--;
-		int a = 0;
-		int b = bsearch.length - 1;
-		while (true) {
-			int t = (b + a) / 2;
-			if (bsearch[t] == k + 1 && toggles.get(t)) {
-				bsearch[t]--;
-				toggles.clear(t);
-				return t;
-			}
-			if (bsearch[t] > k) {
-				bsearch[t]--;
-				b = t;
-			} else {
-				a = t + 1;
-				k -= bsearch[t];
-			}
-		}
+		return index.setDown(k);
 	}
 
 	/**
@@ -234,25 +152,7 @@ public class ToggleArray {
 	 */
 	public int setUp(int k) {
 		if (k >= downCount()) return 0;
-		upCount++;
-		int a = 0;
-		int b = bsearch.length - 1;
-		while (true) {
-			int t = (b + a) / 2;
-			int slt = t - a + 1 - bsearch[t];
-			if ((slt == k + 1) && (!toggles.get(t))) {
-				bsearch[t]++;
-				toggles.set(t);
-				return t;
-			}
-			if (slt > k) {
-				bsearch[t]++;
-				b = t;
-			} else {
-				a = t + 1;
-				k -= slt;
-			}
-		}
+		return index.setUp(k);
 	}
 
 	/**
@@ -264,20 +164,8 @@ public class ToggleArray {
 	 * @return the number of up toggles, zero if out-of-range.
 	 */
 	public int numULE(int i) {
-		if (i >= bsearch.length) return 0;
-		int a = 0;
-		int b = bsearch.length-1;
-		int res = 0;
-		while (a != b) {
-			int t = (b + a)/2;
-			if (i <= t) {
-				b = t;
-			} else {
-				res += bsearch[t];
-				a = t + 1;
-			}
-		}
-		return res;
+		if (i >= index.size()) return 0;
+		return index.numULE(i);
 	}
 
 	/**
@@ -287,7 +175,7 @@ public class ToggleArray {
 	 * @return the number of up toggles, zero if out-of-range.
 	 */
 	public int numULI(int i) {
-		return numULE(i) + (toggles.get(i) ? 1 : 0);
+		return numULE(i) + (index.get(i) ? 1 : 0);
 	}
 
 	/**
@@ -327,7 +215,7 @@ public class ToggleArray {
 	 * @return the number of down toggles, zero if out-of-range.
 	 */
 	public int numDLI(int i) {
-		return i - numULE(i) + (!toggles.get(i) ? 1 : 0);
+		return i - numULE(i) + (!index.get(i) ? 1 : 0);
 	}
 
 	/**
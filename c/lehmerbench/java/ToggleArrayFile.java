@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A ToggleArray kept in a file, which can be checkpointed and reopened after the JVM dies.
+ * <p>The index is a RankSelectDirect (blocked layout) whose buffers are slices of the mapped file.
+ * The file is:
+ * <pre>
+ *   0  magic "TOGGLES1" (long)
+ *   8  n (int)
+ *  12  upCount (int)
+ *  64  block counters: (n-1)/512 + 2 ints (Fenwick tree), padded to 8 bytes
+ *  ..  toggles: (n-1)/64 + 1 longs
+ * </pre>
+ * All in native order (the magic doesn't match on a machine with the other byte order).
+ *
+ * <p>The file is mapped PRIVATE (copy on write): changes stay in memory and the file always holds the
+ * last checkpoint, never a half written state. checkpoint() writes the whole state to a temporary file,
+ * forces it to disk, then renames it over the file (atomic move). If the JVM dies at any point,
+ * the file is either the previous checkpoint or the new one.
+ * <p>Reopening maps the file again: no allDown() and no rebuild, the pages are read when touched.
+ * So restarting is O(1), whatever the size. A checkpoint is O(n/8) bytes written.
+ * <p>Checkpoints rely on POSIX rename semantics: the file is replaced while it is still mapped.
+ * Windows refuses to replace a mapped file, so there checkpoint() fails with an IOException
+ * (and the file keeps the previous checkpoint).
+ *
+ * @see RankSelectDirect
+ * @author drax
+ */
+public class ToggleArrayFile extends ToggleArray {
+	private static final long MAGIC = 0x53454C47474F54L | (long) '1' << 56;   // "TOGGLES1" in little endian
+	private static final int HEADER = 64;
+
+	private final Path file;
+	private final MappedByteBuffer map;
+	private final RankSelectDirect index;
+
+	private ToggleArrayFile(Path file, MappedByteBuffer map, RankSelectDirect index) {
+		super(index);
+		this.file = file;
+		this.map = map;
+		this.index = index;
+	}
+
+	/**
+	 * The total size of the file for n toggles.
+	 */
+	private static long fileBytes(int n) {
+		return HEADER + blocksPadded(n) + RankSelectDirect.togglesBytes(n);
+	}
+
+	private static int blocksPadded(int n) {
+		return (RankSelectDirect.blocksBytes(n) + 7) & ~7;
+	}
+
+	/**
+	 * Reopens the file, or creates it with n toggles all down.
+	 * @param file the file
+	 * @param n the number of toggles (checked against the file when it exists)
+	 * @return the ToggleArray, in the state of the last checkpoint
+	 * @throws IOException if the file can't be created or mapped, or is not a ToggleArray of size n
+	 */
+	public static ToggleArrayFile open(Path file, int n) throws IOException {
+		if (!Files.exists(file))
+			create(file, n);
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (ch.size() != fileBytes(n))
+				throw new IOException(file + ": expected " + fileBytes(n) + " bytes for " + n + " toggles, found " + ch.size());
+			MappedByteBuffer map = ch.map(MapMode.PRIVATE, 0, ch.size());
+			map.order(ByteOrder.nativeOrder());
+			if (map.getLong(0) != MAGIC)
+				throw new IOException(file + ": not a ToggleArray file (or written with another byte order)");
+			if (map.getInt(8) != n)
+				throw new IOException(file + ": holds " + map.getInt(8) + " toggles, not " + n);
+			int upCount = map.getInt(12);
+			ByteBuffer blocks = map.duplicate().position(HEADER).slice();
+			ByteBuffer toggles = map.duplicate().position(HEADER + blocksPadded(n)).slice();
+			return new ToggleArrayFile(file, map, new RankSelectDirect(n, upCount, blocks, toggles));
+		}
+	}
+
+	/**
+	 * Writes an empty file (all down) through a temporary file, like a checkpoint.
+	 */
+	private static void create(Path file, int n) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder());
+		header.putLong(0, MAGIC).putInt(8, n).putInt(12, 0);
+		Path tmp = temporary(file);
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			writeFully(ch, header, 0);
+			writeFully(ch, ByteBuffer.allocate(1), fileBytes(n) - 1);   // the rest reads as zeros (all down)
+			ch.force(true);
+		}
+		replace(tmp, file);
+	}
+
+	/**
+	 * The file holding the checkpoints.
+	 * @return the path given to open()
+	 */
+	public Path file() {
+		return file;
+	}
+
+	/**
+	 * Saves the current state, atomically: after this returns, reopening the file gives this exact state,
+	 * and if the JVM dies during the call, the file still holds the previous checkpoint.
+	 * <p>Complexity: O(n), about n/8 bytes written
+	 * @throws IOException if the file can't be written or replaced, as on Windows (the previous checkpoint is kept)
+	 */
+	public void checkpoint() throws IOException {
+		map.putInt(12, index.upCount());     // the rest of the state is already in the map
+		Path tmp = temporary(file);
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			writeFully(ch, map.duplicate().clear(), 0);
+			ch.force(true);
+		}
+		replace(tmp, file);
+	}
+
+	private static Path temporary(Path file) {
+		return file.resolveSibling(file.getFileName() + ".tmp");
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining())
+			pos += ch.write(buf, pos);
+	}
+
+	/**
+	 * Renames tmp over file, then syncs the directory so that the rename itself is durable.
+	 * The rename is atomic on POSIX file systems, even when the file is mapped (the old mapping keeps
+	 * the old inode). Syncing the directory is best effort: some file systems can't open one.
+	 */
+	private static void replace(Path tmp, Path file) throws IOException {
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		Path dir = file.toAbsolutePath().getParent();
+		try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException e) {
+			// best effort
+		}
+	}
+}
@@ -0,0 +1,72 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of lehmer1() and lehmer2(), loaded by LehmerStrategy.
+ * <p>Needs the incubating Vector API, both to compile and to run:
+ * <pre>
+ * javac *.java
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/LehmerVector.java
+ * java --add-modules jdk.incubator.vector Permutations strategies
+ * </pre>
+ * Both kernels broadcast the pivot perm[k] and compare it against SPECIES.length() elements at once.
+ * The tail (less than one vector) is done the scalar way.
+ *
+ * @author drax
+ */
+final class LehmerVector implements LehmerStrategy.Kernels {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	LehmerVector() {}
+
+	/**
+	 * lehmer1(): every element to the right of the pivot that is bigger than it is decremented,
+	 * with a masked subtraction.
+	 */
+	@Override
+	public int[] decrement(int[] perm) {
+		final int l = perm.length;
+		int[] b = perm.clone();
+		for (int i = 0; i < l; i++) {
+			final int p = b[i];
+			IntVector pivot = IntVector.broadcast(SPECIES, p);
+			int j = i + 1;
+			for (int bound = j + SPECIES.loopBound(l - j); j < bound; j += SPECIES.length()) {
+				IntVector v = IntVector.fromArray(SPECIES, b, j);
+				v.sub(1, v.compare(VectorOperators.GT, pivot)).intoArray(b, j);
+			}
+			for (; j < l; j++)
+				if (b[j] > p)
+					b[j]--;
+		}
+		return b;
+	}
+
+	/**
+	 * lehmer2(): the elements to the right of the pivot that are smaller than it are counted
+	 * in one lane accumulator, which is summed once per pivot.
+	 */
+	@Override
+	public int[] count(int[] perm) {
+		final int l = perm.length;
+		int[] b = new int[l];
+		for (int k = 0; k < l - 1; k++) {
+			final int p = perm[k];
+			IntVector pivot = IntVector.broadcast(SPECIES, p);
+			IntVector acc = IntVector.zero(SPECIES);
+			int j = k + 1;
+			for (int bound = j + SPECIES.loopBound(l - j); j < bound; j += SPECIES.length()) {
+				VectorMask<Integer> smaller = IntVector.fromArray(SPECIES, perm, j).compare(VectorOperators.LT, pivot);
+				acc = acc.add(1, smaller);
+			}
+			int c = acc.reduceLanes(VectorOperators.ADD);
+			for (; j < l; j++)
+				if (perm[j] < p)
+					c++;
+			b[k] = c;
+		}
+		return b;
+	}
+}
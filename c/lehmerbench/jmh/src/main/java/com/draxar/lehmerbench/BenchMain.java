@@ -0,0 +1,34 @@
+package com.draxar.lehmerbench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and saves the results as JSON, so that two versions
+ * can be compared. Any JMH option can be given, for example to run only some of them:
+ * <pre>
+ * java -jar target/benchmarks.jar ToggleArrayBench -p size=1000000,10000000 -rff lehmer.json
+ * </pre>
+ * Default output: jmh-result.json in the current directory.
+ *
+ * @author drax
+ */
+public class BenchMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		Options opts = new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(cmd.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(cmd.getResult().orElse("jmh-result.json"))
+				.build();
+		new Runner(opts).run();
+	}
+}
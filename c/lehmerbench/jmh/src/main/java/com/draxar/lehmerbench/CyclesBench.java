@@ -0,0 +1,44 @@
+package com.draxar.lehmerbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cycle decomposition (findCycles restores its input, so the same array is used every time).
+ *
+ * @author drax
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class CyclesBench {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000", "100000000" })
+	public int size;
+
+	private int[] perm;
+
+	@Setup
+	public void setup() throws Throwable {
+		perm = LehmerBench.permutation(size);
+	}
+
+	@Benchmark
+	public Object findCycles() throws Throwable {
+		return LehmerBench.findCycles(perm);
+	}
+}
@@ -0,0 +1,53 @@
+package com.draxar.lehmerbench;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lehmer code to factoradic and back. Both are O(n²) in bit operations,
+ * so sizes stop at 100k.
+ *
+ * @author drax
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(2)
+public class FactoradicBench {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private int[] lehmer;
+	private BigInteger factoradic;
+
+	@Setup
+	public void setup() throws Throwable {
+		lehmer = LehmerBench.lehmer(LehmerBench.permutation(size));
+		factoradic = LehmerBench.factoradic(lehmer);
+	}
+
+	@Benchmark
+	public BigInteger factoradic() throws Throwable {
+		return LehmerBench.factoradic(lehmer);
+	}
+
+	@Benchmark
+	public int[] inverseFactoradic() throws Throwable {
+		return LehmerBench.inverseFactoradic(factoradic, size);
+	}
+}
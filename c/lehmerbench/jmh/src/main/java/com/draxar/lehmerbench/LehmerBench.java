@@ -0,0 +1,147 @@
+package com.draxar.lehmerbench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+
+/**
+ * Access to the lehmerbench classes.
+ * <p>Those live in the default package (so that javac *.java keeps working), which a named package
+ * can't import, and JMH refuses benchmarks in the default package. So they are reached through
+ * method handles. The handles are static final, so the JIT inlines them just like direct calls.
+ *
+ * @author drax
+ */
+final class LehmerBench {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+	private static final MethodHandle GET_PERMUTATION = method("getPermutation", int[].class, int.class);
+	private static final MethodHandle SHUFFLE = method("shuffle", void.class, int[].class);
+	private static final MethodHandle LEHMER = method("lehmer", int[].class, int[].class);
+	private static final MethodHandle LEHMER_TA = method("lehmer", int[].class, int[].class, type("ToggleArray"));
+	private static final MethodHandle UNLEHMER_TA = method("unlehmer", int[].class, int[].class, type("ToggleArray"));
+	private static final MethodHandle LEHMER1 = method("lehmer1", int[].class, int[].class);
+	private static final MethodHandle LEHMER2 = method("lehmer2", int[].class, int[].class);
+	private static final MethodHandle PERM_FROM_LEHMER = method("permFromLehmer", int[].class, int[].class);
+	private static final MethodHandle INVLEHMER = method("invlehmer", int[].class, int[].class);
+	private static final MethodHandle FIND_CYCLES = method("findCycles", java.util.List.class, int[].class);
+	private static final MethodHandle FACTORADIC = method("factoradic", BigInteger.class, int[].class);
+	private static final MethodHandle INVERSE_FACTORADIC = method("inverseFactoradic", int[].class, BigInteger.class, int.class);
+	private static final MethodHandle NEW_TREE = constructor("RankSelectTree", type("BitField"));
+	private static final MethodHandle NEW_TOGGLE_ARRAY = constructor("ToggleArray", type("RankSelect"));
+	private static final MethodHandle STRATEGY = strategyMethod("valueOf", MethodType.methodType(type("LehmerStrategy"), String.class));
+	private static final MethodHandle STRATEGY_LEHMER = strategyMethod("lehmer", MethodType.methodType(int[].class, int[].class));
+
+	private LehmerBench() {}
+
+	private static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * A static method of Permutations, with every reference type erased to Object.
+	 */
+	private static MethodHandle method(String name, Class<?> ret, Class<?>... params) {
+		try {
+			MethodHandle mh = LOOKUP.findStatic(type("Permutations"), name, MethodType.methodType(ret, params));
+			return mh.asType(mh.type().erase());
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * A method of LehmerStrategy (valueOf is static, lehmer is not), with every reference type erased to Object.
+	 */
+	private static MethodHandle strategyMethod(String name, MethodType type) {
+		try {
+			Class<?> c = type("LehmerStrategy");
+			MethodHandle mh = name.equals("valueOf") ? LOOKUP.findStatic(c, name, type) : LOOKUP.findVirtual(c, name, type);
+			return mh.asType(mh.type().erase());
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * A public constructor, with every reference type erased to Object.
+	 */
+	static MethodHandle constructor(String className, Class<?>... params) {
+		try {
+			MethodHandle mh = LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, params));
+			return mh.asType(mh.type().erase());
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * A shuffled permutation of the given size, always the same one for a given JVM.
+	 */
+	static int[] permutation(int size) throws Throwable {
+		int[] perm = (int[]) (Object) GET_PERMUTATION.invokeExact(size);
+		SHUFFLE.invokeExact((Object) perm);
+		return perm;
+	}
+
+	/**
+	 * A ToggleArray using the original tree layout, on top of the given BitField.
+	 */
+	static Object toggleArray(Object bitField) throws Throwable {
+		Object tree = (Object) NEW_TREE.invokeExact(bitField);
+		return (Object) NEW_TOGGLE_ARRAY.invokeExact(tree);
+	}
+
+	static int[] lehmer(int[] perm) throws Throwable {
+		return (int[]) (Object) LEHMER.invokeExact((Object) perm);
+	}
+
+	static int[] lehmer(int[] perm, Object toggleArray) throws Throwable {
+		return (int[]) (Object) LEHMER_TA.invokeExact((Object) perm, toggleArray);
+	}
+
+	static int[] unlehmer(int[] lehmer, Object toggleArray) throws Throwable {
+		return (int[]) (Object) UNLEHMER_TA.invokeExact((Object) lehmer, toggleArray);
+	}
+
+	static int[] lehmer1(int[] perm) throws Throwable {
+		return (int[]) (Object) LEHMER1.invokeExact((Object) perm);
+	}
+
+	static int[] lehmer2(int[] perm) throws Throwable {
+		return (int[]) (Object) LEHMER2.invokeExact((Object) perm);
+	}
+
+	static int[] permFromLehmer(int[] lehmer) throws Throwable {
+		return (int[]) (Object) PERM_FROM_LEHMER.invokeExact((Object) lehmer);
+	}
+
+	static int[] invlehmer(int[] lehmer) throws Throwable {
+		return (int[]) (Object) INVLEHMER.invokeExact((Object) lehmer);
+	}
+
+	static Object strategy(String name) throws Throwable {
+		return (Object) STRATEGY.invokeExact((Object) name);
+	}
+
+	static int[] lehmer(Object strategy, int[] perm) throws Throwable {
+		return (int[]) (Object) STRATEGY_LEHMER.invokeExact(strategy, (Object) perm);
+	}
+
+	static Object findCycles(int[] perm) throws Throwable {
+		return (Object) FIND_CYCLES.invokeExact((Object) perm);
+	}
+
+	static BigInteger factoradic(int[] lehmer) throws Throwable {
+		return (BigInteger) (Object) FACTORADIC.invokeExact((Object) lehmer);
+	}
+
+	static int[] inverseFactoradic(BigInteger factoradic, int size) throws Throwable {
+		return (int[]) (Object) INVERSE_FACTORADIC.invokeExact((Object) factoradic, size);
+	}
+}
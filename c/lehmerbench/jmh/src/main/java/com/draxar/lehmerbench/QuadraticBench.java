@@ -0,0 +1,62 @@
+package com.draxar.lehmerbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The O(n²) encoders and decoders. Sizes stop at 100k, above that a single call takes minutes.
+ * <p>Also settles "invlehmer is slower than permFromLehmer for some reason".
+ *
+ * @author drax
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(2)
+public class QuadraticBench {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private int[] perm;
+	private int[] lehmer;
+
+	@Setup
+	public void setup() throws Throwable {
+		perm = LehmerBench.permutation(size);
+		lehmer = LehmerBench.lehmer(perm);
+	}
+
+	@Benchmark
+	public int[] lehmer1() throws Throwable {
+		return LehmerBench.lehmer1(perm);
+	}
+
+	@Benchmark
+	public int[] lehmer2() throws Throwable {
+		return LehmerBench.lehmer2(perm);
+	}
+
+	@Benchmark
+	public int[] permFromLehmer() throws Throwable {
+		return LehmerBench.permFromLehmer(lehmer);
+	}
+
+	@Benchmark
+	public int[] invlehmer() throws Throwable {
+		return LehmerBench.invlehmer(lehmer);
+	}
+}
@@ -0,0 +1,50 @@
+package com.draxar.lehmerbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every LehmerStrategy on mid-size permutations, to find where the SIMD O(n²) kernels
+ * stop beating the O(n log n) ToggleArray.
+ *
+ * @author drax
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class StrategyBench {
+
+	@Param({ "1000", "2000", "5000", "10000", "20000", "50000" })
+	public int size;
+
+	@Param({ "TOGGLE_ARRAY", "COUNT", "DECREMENT_VECTOR", "COUNT_VECTOR" })
+	public String strategy;
+
+	private int[] perm;
+	private Object lehmerStrategy;
+
+	@Setup
+	public void setup() throws Throwable {
+		perm = LehmerBench.permutation(size);
+		lehmerStrategy = LehmerBench.strategy(strategy);
+	}
+
+	@Benchmark
+	public int[] lehmer() throws Throwable {
+		return LehmerBench.lehmer(lehmerStrategy, perm);
+	}
+}
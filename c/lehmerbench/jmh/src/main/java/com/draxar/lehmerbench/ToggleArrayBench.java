@@ -0,0 +1,62 @@
+package com.draxar.lehmerbench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The O(n log n) algorithms based on ToggleArray, for each BitField implementation.
+ * The ToggleArray is created inside the measured code, like lehmer(perm) does.
+ *
+ * @author drax
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class ToggleArrayBench {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000", "100000000" })
+	public int size;
+
+	@Param({ "BitFieldDrax", "BitFieldLong", "BitFieldDirect" })
+	public String bitField;
+
+	private int[] perm;
+	private int[] lehmer;
+	private MethodHandle newBitField;
+
+	@Setup
+	public void setup() throws Throwable {
+		perm = LehmerBench.permutation(size);
+		lehmer = LehmerBench.lehmer(perm);
+		newBitField = LehmerBench.constructor(bitField, int.class);
+	}
+
+	private Object toggleArray() throws Throwable {
+		return LehmerBench.toggleArray((Object) newBitField.invokeExact(size));
+	}
+
+	@Benchmark
+	public int[] lehmer() throws Throwable {
+		return LehmerBench.lehmer(perm, toggleArray());
+	}
+
+	@Benchmark
+	public int[] unlehmer() throws Throwable {
+		return LehmerBench.unlehmer(lehmer, toggleArray());
+	}
+}
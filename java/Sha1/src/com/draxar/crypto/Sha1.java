@@ -1,11 +1,18 @@
 package com.draxar.crypto;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /**
  * Sha1 Java implementation.
@@ -14,19 +21,24 @@ import java.util.Arrays;
 public class Sha1 {
 
 // Round function helpers -------------------------------------------------------
-	private static final int K1 = 0x5a827999;
-	private static final int K2 = 0x6ed9eba1;
-	private static final int K3 = 0x8f1bbcdc;
-	private static final int K4 = 0xca62c1d6;
-	private static int rotl(int x, int n) { return (x << n) | (x >>> (32 - n)); }
-	private static int F1(int b,int c, int d) { return d ^ (b & (c ^ d)); }
-	private static int F2(int b,int c, int d) { return b ^ c ^ d; }
-	private static int F3(int b,int c, int d) { return (b & c) | (d & (b | c)); }
-	private static int F4(int b,int c, int d) { return b ^ c ^ d; }
+	static final int K1 = 0x5a827999;
+	static final int K2 = 0x6ed9eba1;
+	static final int K3 = 0x8f1bbcdc;
+	static final int K4 = 0xca62c1d6;
+	static int rotl(int x, int n) { return (x << n) | (x >>> (32 - n)); }
+	static int F1(int b,int c, int d) { return d ^ (b & (c ^ d)); }
+	static int F2(int b,int c, int d) { return b ^ c ^ d; }
+	static int F3(int b,int c, int d) { return (b & c) | (d & (b | c)); }
+	static int F4(int b,int c, int d) { return b ^ c ^ d; }
 	private static int M(int[] x, int i) {
 		int t = x[i & 15] ^ x[(i-14) & 15] ^ x[(i-8) & 15] ^ x[(i-3) & 15];
 		return x[i & 15] = rotl(t, 1);
 	}
+	// big endian ints and longs read from / written to a byte[] at any offset, without wrapping it
+	static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	// the same for a ByteBuffer (heap, direct or mapped), whatever its order() is
+	private static final VarHandle INT_BB = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
 //-------------------------------------------------------------------------------
 
 	private int	A = 0x67452301;
@@ -36,19 +48,45 @@ public class Sha1 {
 	private int	E = 0xc3d2e1f0;
 	private int buflen = 0;
 	private long datalen = 0;
+	private boolean finished = false;       // set by finish(): A to E are the digest, nothing can be added
 	private byte[] buf = new byte[64];
+	private final int[] x = new int[16];    // the message schedule, reused by every block
 
-	private static String intToHex(int i) {
+	private static final long WINDOW = 1 << 30;      // bytes mapped at a time, a multiple of 64
+	private static final int CHUNK = 1 << 20;        // bytes read at a time when the file can't be mapped
+
+	private static final int SNAPSHOT_MAGIC = 0x53484131;    // "SHA1"
+	public static final int SNAPSHOT_SIZE = 4 + 20 + 8 + 64; // magic, A to E, datalen, buf
+
+	static String intToHex(int i) {
 		return Long.toHexString(0xffffffff00000000L | i).substring(8);
 	}
 
 	public static String fromFile(String filename) throws IOException {
+		return fromFile(Paths.get(filename));
+	}
+
+	/**
+	 * Hashes a file through a FileChannel.
+	 * A regular file is mapped, in windows of 1 GB, and hashed straight from the page cache: no read()
+	 * and no copy. Anything else (pipe, device...) is read in 1 MB chunks into a direct buffer.
+	 * @param file The file to hash.
+	 * @return the 160 bit sha1 digest, in hex.
+	 */
+	public static String fromFile(Path file) throws IOException {
 		Sha1 sha = new Sha1();
-		try (var bis = new BufferedInputStream(new FileInputStream(filename))) {
-			byte[] buf = new byte[0x100];
-			int bytes;
-			while ((bytes = bis.read(buf)) != -1)
-				sha.update(buf, bytes);
+		try (FileChannel ch = FileChannel.open(file)) {
+			if (Files.isRegularFile(file)) {
+				long size = ch.size();
+				for (long pos = 0; pos < size; pos += WINDOW)
+					sha.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos)));
+			} else {
+				ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK);
+				while (ch.read(chunk) != -1) {
+					sha.update(chunk.flip());
+					chunk.clear();
+				}
+			}
 		}
 		sha.finish();
 		return sha.toString();
@@ -59,47 +97,87 @@ public class Sha1 {
 	 * Use len to specify how many useful bytes to take.
 	 * @param data The bytes to hash.
 	 * @param len The number of bytes to hash [data[0], data[len])
+	 * @throws IllegalStateException after finish()
 	 */
 	public void update(byte[] data, int len) {
-		int start = 0;
+		update(data, 0, len);
+	}
+
+	/**
+	 * Feeds data[off, off + len) to the hash.
+	 * @param data The bytes to hash.
+	 * @param off The index of the first byte to hash.
+	 * @param len The number of bytes to hash.
+	 * @throws IllegalStateException after finish()
+	 */
+	public void update(byte[] data, int off, int len) {
+		update(data, null, off, len);
+	}
+
+	/**
+	 * Feeds the bytes between the position and the limit of data, like update(byte[], int).
+	 * Whole blocks are compressed in place from data (heap, direct or mapped), without copying them.
+	 * @param data The bytes to hash. Its position is moved to its limit.
+	 * @throws IllegalStateException after finish()
+	 */
+	public void update(ByteBuffer data) {
+		if (data.hasArray())
+			update(data.array(), null, data.arrayOffset() + data.position(), data.remaining());
+		else
+			update(null, data, data.position(), data.remaining());
+		data.position(data.limit());
+	}
+
+	/**
+	 * The buffering of both update(): the bytes come from array if it's not null, from buffer otherwise.
+	 * @param off the index of the first byte in array, or the absolute index in buffer
+	 */
+	private void update(byte[] array, ByteBuffer buffer, int off, int len) {
+		checkRunning();
 		datalen += len;
 		// First, fill up the current buffer
 		if (buflen != 0) {
 			int qty = Math.min(len, 64 - buflen);
-			System.arraycopy(data, start, buf, buflen, qty);
+			toBuf(array, buffer, off, qty);
+			off += qty;
 			len -= qty;
-			buflen += qty;
-			start += qty;
 			if (buflen == 64)
-				process();
+				process(buf, 0);
 		}
-		// Then, batch process blocks of 512 bits
-		if (len != 0) {
-			int d = len / 64;
-			int r = len % 64;
-			while (d --> 0) {
-				System.arraycopy(data, start, buf, 0, 64);
-				process();
-				start += 64;
-			}
-			System.arraycopy(data, start, buf, 0, r);
-	        buflen = r;
+		// Then, batch process blocks of 512 bits, straight from the data
+		for (; len >= 64; off += 64, len -= 64) {
+			if (array != null) process(array, off);
+			else process(buffer, off);
 		}
+		// Keep the rest for the next call (len is 0 if buf is still not full)
+		toBuf(array, buffer, off, len);
+	}
+
+	/**
+	 * Appends qty bytes to buf.
+	 */
+	private void toBuf(byte[] array, ByteBuffer buffer, int off, int qty) {
+		if (array != null) System.arraycopy(array, off, buf, buflen, qty);
+		else buffer.get(off, buf, buflen, qty);
+		buflen += qty;
 	}
 
 	/**
 	 * Call this once all the data has been sent. This method adds the sha1 padding.
+	 * After it, only toString() can be called (see digest() to get the digest and keep hashing).
+	 * @throws IllegalStateException after finish()
 	 */
 	public void finish() {
+		checkRunning();
+		finished = true;
 		buf[buflen++] = -128;                               // Add the '1' bit
 		if (buflen > 56) {                                  // no room for datalen, we'll need a new packet
 			Arrays.fill(buf, buflen, 64, (byte)0);          // zero out all we can
-			process();                                      // and process this 'one-before-the-last' packet
+			process(buf, 0);                                // and process this 'one-before-the-last' packet
 		}
 		Arrays.fill(buf, buflen, 56, (byte)0);              // zero out everything after the '1' bit, except for the last 8 bytes
-		byte[] dlen = ByteBuffer.allocate(8).putLong(datalen * 8).array(); // prepare datalen in bits
-		System.arraycopy(dlen, 0, buf, 56, 8);              // add datalen in bits to finish the padding
-		process();
+		LONG_BE.set(buf, 56, datalen * 8);                  // add datalen in bits to finish the padding
+		process(buf, 0);
 	}
 
 	/**
@@ -116,16 +194,116 @@ public class Sha1 {
 		return sb.toString();
 	}
 
+	/**
+	 * A copy of the running state: both can then be fed and finished independently,
+	 * e.g. to hash a common prefix once and fork it.
+	 * @return a new Sha1, in the same state as this one
+	 * @throws IllegalStateException after finish()
+	 */
+	public Sha1 copy() {
+		checkRunning();
+		Sha1 c = new Sha1();
+		c.A = A; c.B = B; c.C = C; c.D = D; c.E = E;
+		c.buflen = buflen;
+		c.datalen = datalen;
+		System.arraycopy(buf, 0, c.buf, 0, 64);
+		return c;
+	}
+
+	/**
+	 * The digest of the data sent so far, without finishing this Sha1: more data can still be sent.
+	 * <p>Complexity: O(1), at most 2 blocks are processed (on a copy).
+	 * @return the 160 bit sha1 digest, in hex, as toString() gives it after finish()
+	 * @throws IllegalStateException after finish()
+	 */
+	public String digest() {
+		Sha1 c = copy();
+		c.finish();
+		return c.toString();
+	}
+
+	/**
+	 * Saves the running state, to resume hashing later with restore(),
+	 * e.g. after a restart, only sending the bytes appended since.
+	 * <p>The snapshot is SNAPSHOT_SIZE bytes: "SHA1", A to E, the number of bytes sent so far,
+	 * then the pending bytes of the current block (datalen % 64 of them, the rest is zeros). Big endian.
+	 * @return the snapshot
+	 * @throws IllegalStateException after finish()
+	 */
+	public byte[] snapshot() {
+		checkRunning();
+		byte[] s = new byte[SNAPSHOT_SIZE];
+		INT_BE.set(s, 0, SNAPSHOT_MAGIC);
+		INT_BE.set(s, 4, A);
+		INT_BE.set(s, 8, B);
+		INT_BE.set(s, 12, C);
+		INT_BE.set(s, 16, D);
+		INT_BE.set(s, 20, E);
+		LONG_BE.set(s, 24, datalen);
+		System.arraycopy(buf, 0, s, 32, buflen);
+		return s;
+	}
+
+	/**
+	 * Resumes hashing from a snapshot.
+	 * @param snapshot the result of snapshot()
+	 * @return a Sha1 in the state it was when the snapshot was taken
+	 * @throws IllegalArgumentException if snapshot is not a Sha1 snapshot
+	 */
+	public static Sha1 restore(byte[] snapshot) {
+		if (snapshot.length != SNAPSHOT_SIZE || (int) INT_BE.get(snapshot, 0) != SNAPSHOT_MAGIC)
+			throw new IllegalArgumentException("Not a Sha1 snapshot");
+		long datalen = (long) LONG_BE.get(snapshot, 24);
+		if (datalen < 0)
+			throw new IllegalArgumentException("Corrupted Sha1 snapshot: " + datalen + " bytes");
+		Sha1 sha = new Sha1();
+		sha.A = (int) INT_BE.get(snapshot, 4);
+		sha.B = (int) INT_BE.get(snapshot, 8);
+		sha.C = (int) INT_BE.get(snapshot, 12);
+		sha.D = (int) INT_BE.get(snapshot, 16);
+		sha.E = (int) INT_BE.get(snapshot, 20);
+		sha.datalen = datalen;
+		sha.buflen = (int) (datalen & 63);
+		System.arraycopy(snapshot, 32, sha.buf, 0, sha.buflen);
+		return sha;
+	}
+
+	private void checkRunning() {
+		if (finished)
+			throw new IllegalStateException("Sha1 already finished");
+	}
+
 	/**
 	 * Process a full 512 bit block of data using sha1 rounds.
-	 * This updates the state.
+	 * This updates the state. Nothing is allocated: the block is read in place.
+	 * @param block the array holding the block, buf or the caller's data
+	 * @param off the offset of the 64 bytes of the block in it
 	 */
-	private void process() {
+	private void process(byte[] block, int off) {
 		buflen = 0;
-		// Convert the byte buffer buf to an big endian int array
-		IntBuffer intBuf = ByteBuffer.wrap(buf).asIntBuffer();
-		int[] x = new int[intBuf.remaining()];
-		intBuf.get(x);
+		// Read the block as big endian ints into the message schedule
+		final int[] x = this.x;
+		for (int i = 0; i < 16; i++)
+			x[i] = (int) INT_BE.get(block, off + (i << 2));
+		compress();
+	}
+
+	/**
+	 * Same as process(byte[], int), with the block at the absolute index off of a ByteBuffer.
+	 */
+	private void process(ByteBuffer block, int off) {
+		buflen = 0;
+		final int[] x = this.x;
+		for (int i = 0; i < 16; i++)
+			x[i] = (int) INT_BB.get(block, off + (i << 2));
+		compress();
+	}
+
+	/**
+	 * The 80 rounds over the message schedule x.
+	 */
+	private void compress() {
+		final int[] x = this.x;
 		int a = A, b = B, c = C, d = D, e = E;
 
 		e += rotl(a, 5) + F1(b, c, d) + K1 + x[ 0];    b = rotl(b, 30);
@@ -212,16 +390,107 @@ public class Sha1 {
 		A += a; B += b; C += c; D += d; E += e;
 	}
 
-	public static void main(String[] args) {
-		if (args.length != 0) {
+	/**
+	 * Checks copy(), digest() and snapshot()/restore() on random messages cut at random points: whatever
+	 * is done at the cut, the rest of the message must give the digest of the JDK's SHA-1.
+	 * Then checks that a finished Sha1 refuses everything but toString(), and that restore() rejects
+	 * snapshots of the wrong size, with the wrong magic or a negative length.
+	 * @throws AssertionError on the first failure
+	 */
+	static void check() {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		SplittableRandom rng = new SplittableRandom(25);
+		for (int round = 0; round < 2000; round++) {
+			byte[] data = new byte[rng.nextInt(300)];
+			for (int i = 0; i < data.length; i++)
+				data[i] = (byte) rng.nextInt();
+			int cut = rng.nextInt(data.length + 1), rest = data.length - cut;
+			String expected = hex(md.digest(data));
+			String prefix = hex(md.digest(Arrays.copyOf(data, cut)));
+
+			Sha1 sha = new Sha1();
+			sha.update(data, 0, cut);
+			if (!sha.digest().equals(prefix))
+				throw new AssertionError("digest() differs after " + cut + " bytes");
+			Sha1 copy = sha.copy();
+			Sha1 restored = restore(sha.snapshot());
+			sha.update(data, cut, rest);
+			copy.update(ByteBuffer.wrap(data, cut, rest));
+			restored.update(ByteBuffer.allocateDirect(rest).put(data, cut, rest).flip());
+			for (Sha1 s : new Sha1[] { sha, copy, restored }) {
+				s.finish();
+				if (!s.toString().equals(expected))
+					throw new AssertionError((s == sha ? "digest()" : s == copy ? "copy()" : "restore()")
+							+ " then " + rest + " more bytes differs, cut at " + cut + " of " + data.length);
+			}
+		}
+
+		Sha1 done = new Sha1();
+		done.finish();
+		Runnable[] calls = {
+			() -> done.update(new byte[1], 1), () -> done.update(new byte[1], 0, 1),
+			() -> done.update(ByteBuffer.allocate(1)), done::finish, done::copy, done::digest, done::snapshot
+		};
+		for (int i = 0; i < calls.length; i++) {
+			try {
+				calls[i].run();
+				throw new AssertionError("call " + i + " accepted after finish()");
+			} catch (IllegalStateException expected) {
+				// ok
+			}
+		}
+
+		byte[] good = new Sha1().snapshot();
+		byte[] badMagic = good.clone(), negative = good.clone();
+		badMagic[0] ^= 1;
+		negative[24] = (byte) 0x80;
+		for (byte[] bad : new byte[][] { Arrays.copyOf(good, SNAPSHOT_SIZE - 1), Arrays.copyOf(good, SNAPSHOT_SIZE + 1),
+				badMagic, negative }) {
+			try {
+				restore(bad);
+				throw new AssertionError("restore() accepted a bad snapshot");
+			} catch (IllegalArgumentException expected) {
+				// ok
+			}
+		}
+		System.out.println("Sha1 OK");
+	}
+
+	private static String hex(byte[] digest) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i += 4)
+			sb.append(intToHex((int) INT_BE.get(digest, i)));
+		return sb.toString();
+	}
+
+	/**
+	 * java com.draxar.crypto.Sha1 file: prints the digest of the file.
+	 * With several files, directories or options, hashes them all in parallel (see Sha1Sum).
+	 * With -t, checks Sha1 against the JDK, then Sha1Lanes against Sha1
+	 * (add --add-modules jdk.incubator.vector to check its vector kernel).
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length == 1 && args[0].equals("-t")) {
+			check();
+			Sha1Lanes.check();
+		} else if (args.length == 1 && !args[0].startsWith("-") && !Files.isDirectory(Paths.get(args[0]))) {
 			try {
 				String hash = Sha1.fromFile(args[0]);
 				System.out.println(hash);
 			} catch (IOException ioe) {
 				System.err.println(ioe);
 			}
+		} else if (args.length != 0) {
+			Sha1Sum.main(args);
 		} else {
 			System.out.println("Usage: java Sha1 <file>");
+			System.out.println("       java Sha1 [-j threads] [-b budget in MB] [-u] file|dir...");
+			System.out.println("       java Sha1 -t   (self check)");
 		}
 	}
-}
\ No newline at end of file
+}
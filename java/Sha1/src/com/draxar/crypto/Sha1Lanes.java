@@ -0,0 +1,268 @@
+package com.draxar.crypto;
+
+import static com.draxar.crypto.Sha1.F1;
+import static com.draxar.crypto.Sha1.F2;
+import static com.draxar.crypto.Sha1.F3;
+import static com.draxar.crypto.Sha1.F4;
+import static com.draxar.crypto.Sha1.K1;
+import static com.draxar.crypto.Sha1.K2;
+import static com.draxar.crypto.Sha1.K3;
+import static com.draxar.crypto.Sha1.K4;
+import static com.draxar.crypto.Sha1.rotl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Sha1 of many independent messages, 4 or 8 of them (the lanes) compressed in lockstep.
+ * <p>One sha1 is a single chain of 80 dependent rounds per block: a core mostly waits on it.
+ * Here each round is done for all the lanes at once, so the lanes hide each other's latency,
+ * or are done by one SIMD instruction with the Vector API kernel.
+ * <p>The state and the message schedule are stored lane by lane ("structure of arrays"):
+ * state[j * L + lane] is the j-th word (A to E) of a lane, w[t * L + lane] its t-th schedule word,
+ * L being the number of lanes of the kernel: 8 for the scalar one, 8 or 4 for the vector one
+ * depending on the SIMD width of the machine.
+ * When a message is done, its lane is refilled with the next message, so messages of different
+ * sizes don't leave lanes idle until the very end.
+ * <p>The vector kernel (vector/com/draxar/crypto/Sha1LanesVector.java) needs the incubating Vector API,
+ * both to compile and to run:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/com/draxar/crypto/Sha1LanesVector.java
+ * java --add-modules jdk.incubator.vector -cp bin ...
+ * </pre>
+ * Without it, on a machine without at least 128-bit SIMD, or with -Dsha1.lanes=scalar,
+ * the scalar kernel is used.
+ *
+ * @see Sha1
+ * @author drax
+ */
+public final class Sha1Lanes {
+	/**
+	 * Compresses one block for each lane.
+	 */
+	interface Kernel {
+		/**
+		 * @return the number of lanes compressed at once
+		 */
+		public int lanes();
+
+		/**
+		 * @param state the 5 words of each lane, updated
+		 * @param w the 16 words of the block of each lane, used as the message schedule (overwritten)
+		 * @param work 5 * lanes() ints of scratch space
+		 */
+		public void compress(int[] state, int[] w, int[] work);
+	}
+
+	static final Kernel SCALAR = new Kernel() {
+		@Override
+		public int lanes() {
+			return 8;
+		}
+
+		@Override
+		public void compress(int[] state, int[] w, int[] work) {
+			Sha1Lanes.compress(state, w, work);
+		}
+	};
+	private static final Kernel KERNEL = load();
+
+	private Sha1Lanes() {}
+
+	private static Kernel load() {
+		if ("scalar".equals(System.getProperty("sha1.lanes")))
+			return SCALAR;
+		Kernel vector = vector();
+		return vector != null ? vector : SCALAR;
+	}
+
+	private static Kernel vector() {
+		try {
+			return (Kernel) Class.forName("com.draxar.crypto.Sha1LanesVector").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;        // not compiled, jdk.incubator.vector not added, or no SIMD
+		}
+	}
+
+	/**
+	 * @return true if the Vector API kernel was loaded
+	 */
+	public static boolean isVectorized() {
+		return KERNEL != SCALAR;
+	}
+
+	/**
+	 * @return the number of messages compressed at once
+	 */
+	public static int lanes() {
+		return KERNEL.lanes();
+	}
+
+	/**
+	 * Hashes each message.
+	 * @param messages the messages, of any size
+	 * @return the digests, 5 ints (A to E) per message: those of messages[i] are at [5 * i, 5 * i + 5)
+	 */
+	public static int[] hash(byte[]... messages) {
+		int[] digests = new int[5 * messages.length];
+		hash(messages, digests, KERNEL);
+		return digests;
+	}
+
+	/**
+	 * The digest of messages[i] in hex, as Sha1.toString() gives it.
+	 * @param digests the result of hash()
+	 * @param i the index of the message
+	 */
+	public static String toString(int[] digests, int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int j = 0; j < 5; j++)
+			sb.append(Sha1.intToHex(digests[5 * i + j]));
+		return sb.toString();
+	}
+
+	static void hash(byte[][] messages, int[] digests, Kernel kernel) {
+		final int L = kernel.lanes();
+		int[] state = new int[5 * L], w = new int[16 * L], work = new int[5 * L];
+		int[] msg = new int[L];         // the message in each lane, -1 when the lane is idle
+		int[] block = new int[L];       // the next block of each lane
+		int[] full = new int[L];        // the number of whole blocks of its message, read in place
+		int[] blocks = new int[L];      // the number of blocks, padding included
+		byte[] tail = new byte[128 * L];  // the last 1 or 2 blocks of each lane, padded
+		int next = 0, active = 0;
+		for (int l = 0; l < L; l++) {
+			msg[l] = -1;
+			if (next < messages.length) {
+				start(messages, next++, l, state, msg, block, full, blocks, tail);
+				active++;
+			}
+		}
+		while (active != 0) {
+			for (int l = 0; l < L; l++) {
+				if (msg[l] < 0) continue;
+				byte[] src = messages[msg[l]];
+				int off = block[l] << 6;
+				if (block[l] >= full[l]) {
+					src = tail;
+					off = (l << 7) + ((block[l] - full[l]) << 6);
+				}
+				for (int t = 0; t < 16; t++)
+					w[t * L + l] = (int) Sha1.INT_BE.get(src, off + (t << 2));
+			}
+			kernel.compress(state, w, work);
+			for (int l = 0; l < L; l++) {
+				if (msg[l] < 0 || ++block[l] != blocks[l]) continue;
+				for (int j = 0; j < 5; j++)
+					digests[5 * msg[l] + j] = state[j * L + l];
+				msg[l] = -1;
+				if (next < messages.length) start(messages, next++, l, state, msg, block, full, blocks, tail);
+				else active--;
+			}
+		}
+	}
+
+	/**
+	 * Checks the scalar kernel, and the vector one when it can be loaded, against Sha1.
+	 * First every size from 0 to 200 bytes, which covers all the padding cases (55 and 56, 63 to 65,
+	 * 119 and 120...), then batches of random sizes, so that lanes are refilled at different blocks.
+	 * @throws AssertionError on the first digest that differs
+	 */
+	static void check() {
+		List<Kernel> kernels = new ArrayList<>();
+		kernels.add(SCALAR);
+		Kernel vector = vector();
+		if (vector != null) kernels.add(vector);
+		SplittableRandom rng = new SplittableRandom(24);
+		byte[][] sizes = new byte[201][];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = random(rng, i);
+		check(sizes, kernels);
+		for (int round = 0; round < 200; round++) {
+			byte[][] messages = new byte[1 + rng.nextInt(40)][];
+			for (int i = 0; i < messages.length; i++)
+				messages[i] = random(rng, rng.nextInt(4) == 0 ? rng.nextInt(2000) : rng.nextInt(130));
+			check(messages, kernels);
+		}
+		System.out.println("Sha1Lanes OK (scalar kernel" + (vector != null ? ", " + vector.lanes() + " lanes vector kernel)" : ")"));
+	}
+
+	private static void check(byte[][] messages, List<Kernel> kernels) {
+		for (Kernel kernel : kernels) {
+			int[] digests = new int[5 * messages.length];
+			hash(messages, digests, kernel);
+			for (int i = 0; i < messages.length; i++) {
+				Sha1 sha = new Sha1();
+				sha.update(messages[i], messages[i].length);
+				sha.finish();
+				if (!sha.toString().equals(toString(digests, i)))
+					throw new AssertionError((kernel == SCALAR ? "scalar" : "vector") + " kernel differs from Sha1 on "
+							+ messages[i].length + " bytes, message " + i + " of " + messages.length);
+			}
+		}
+	}
+
+	private static byte[] random(SplittableRandom rng, int len) {
+		byte[] b = new byte[len];
+		for (int i = 0; i < len; i++)
+			b[i] = (byte) rng.nextInt();
+		return b;
+	}
+
+	/**
+	 * Puts message m in lane l: initial state, block counts and padded tail.
+	 */
+	private static void start(byte[][] messages, int m, int l, int[] state, int[] msg, int[] block, int[] full,
+			int[] blocks, byte[] tail) {
+		final int L = msg.length;
+		final byte[] data = messages[m];
+		final int len = data.length;
+		msg[l] = m;
+		block[l] = 0;
+		full[l] = len >> 6;
+		blocks[l] = ((len + 8) >> 6) + 1;
+		state[l] = 0x67452301;
+		state[L + l] = 0xefcdab89;
+		state[2 * L + l] = 0x98badcfe;
+		state[3 * L + l] = 0x10325476;
+		state[4 * L + l] = 0xc3d2e1f0;
+		final int rest = len & 63, base = l << 7, end = base + ((blocks[l] - full[l]) << 6);
+		System.arraycopy(data, len - rest, tail, base, rest);
+		tail[base + rest] = -128;                                // the '1' bit
+		Arrays.fill(tail, base + rest + 1, end - 8, (byte) 0);
+		Sha1.LONG_BE.set(tail, end - 8, (long) len << 3);        // the length in bits
+	}
+
+	/**
+	 * The scalar kernel: each round goes through the lanes before the next round,
+	 * the lanes being independent, their rounds overlap in the pipeline.
+	 */
+	private static void compress(int[] s, int[] w, int[] v) {
+		final int L = s.length / 5;
+		System.arraycopy(s, 0, v, 0, 5 * L);
+		for (int t = 0; t < 80; t++) {
+			final int wt = (t & 15) * L;
+			if (t >= 16) {
+				final int w3 = ((t - 3) & 15) * L, w8 = ((t - 8) & 15) * L, w14 = ((t - 14) & 15) * L;
+				for (int l = 0; l < L; l++)
+					w[wt + l] = rotl(w[w3 + l] ^ w[w8 + l] ^ w[w14 + l] ^ w[wt + l], 1);
+			}
+			for (int l = 0; l < L; l++) {
+				final int a = v[l], b = v[L + l], c = v[2 * L + l], d = v[3 * L + l], e = v[4 * L + l];
+				final int f;
+				if (t < 20) f = F1(b, c, d) + K1;
+				else if (t < 40) f = F2(b, c, d) + K2;
+				else if (t < 60) f = F3(b, c, d) + K3;
+				else f = F4(b, c, d) + K4;
+				v[4 * L + l] = d;
+				v[3 * L + l] = c;
+				v[2 * L + l] = rotl(b, 30);
+				v[L + l] = a;
+				v[l] = rotl(a, 5) + f + e + w[wt + l];
+			}
+		}
+		for (int i = 0; i < 5 * L; i++)
+			s[i] += v[i];
+	}
+}
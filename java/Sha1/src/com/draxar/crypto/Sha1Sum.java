@@ -0,0 +1,210 @@
+package com.draxar.crypto;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes many files at once, printing sha1sum compatible lines: "<digest>  <file>".
+ * Like GNU sha1sum, a name holding a backslash, a newline or a carriage return is escaped
+ * (\\, \n and \r) and its line starts with a backslash, so that each file stays on one line.
+ * <p>Each file is hashed by Sha1.fromFile() on a fixed thread pool. Directories are walked, their files
+ * in sorted order. Before a file is handed to the pool, its size is taken from a byte budget (a Semaphore,
+ * counted in KB, a file bigger than the whole budget takes all of it), and given back once hashed.
+ * So at most budget bytes of files are being read at any time, whatever the number of threads.
+ * <p>Lines come in input order (a line waits for the files before it), or as the files are done with -u.
+ * Like sha1sum, a file that can't be read is reported on stderr, the others are still hashed, and the
+ * exit status is 1.
+ *
+ * @see Sha1#fromFile(Path)
+ * @author drax
+ */
+public class Sha1Sum {
+	private final int threads;
+	private final long budget;         // in KB
+	private final boolean ordered;
+	private final PrintStream out;
+	private boolean failed;
+
+	/**
+	 * @param threads the number of files hashed at the same time. More than the number of cores helps
+	 *        when the storage is slow to answer (network, spinning disks): threads then wait for I/O.
+	 * @param budget the maximum number of bytes of files being hashed at the same time
+	 * @param ordered print the lines in input order, instead of as soon as each file is done
+	 * @param out where the lines go
+	 */
+	public Sha1Sum(int threads, long budget, boolean ordered, PrintStream out) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive, got " + threads);
+		this.threads = threads;
+		this.budget = Math.max(1, Math.min(Integer.MAX_VALUE, budget >> 10));
+		this.ordered = ordered;
+		this.out = out;
+	}
+
+	/**
+	 * Hashes the files, and the files under the directories.
+	 * @param paths files and directories
+	 * @return true if every file could be hashed
+	 */
+	public boolean hash(List<Path> paths) throws InterruptedException {
+		failed = false;
+		Semaphore inFlight = new Semaphore((int) budget);
+		ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (Path file : files(paths)) {
+				int permits = (int) Math.min(budget, Math.max(1, (size(file) + 1023) >> 10));
+				inFlight.acquire(permits);
+				Future<String> line = pool.submit(() -> {
+					try {
+						String l = line(file);
+						if (!ordered) print(l);
+						return l;
+					} finally {
+						inFlight.release(permits);
+					}
+				});
+				if (ordered) {
+					pending.add(line);
+					while (!pending.isEmpty() && pending.peek().isDone())
+						print(result(pending.poll()));
+				}
+			}
+			while (!pending.isEmpty())
+				print(result(pending.poll()));
+		} finally {
+			pool.shutdown();
+		}
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		return !failed;
+	}
+
+	/**
+	 * The files to hash, in input order, directories replaced by their files.
+	 */
+	private List<Path> files(List<Path> paths) {
+		List<Path> files = new ArrayList<>();
+		for (Path p : paths) {
+			if (!Files.isDirectory(p)) {
+				files.add(p);
+				continue;
+			}
+			List<Path> found = new ArrayList<>();
+			try {
+				Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						if (attrs.isRegularFile()) found.add(file);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						error(file + ": " + e);         // like sha1sum, skip it and go on with the others
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+						if (e != null) error(dir + ": " + e);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				error(p + ": " + e);
+			}
+			Collections.sort(found);
+			files.addAll(found);
+		}
+		return files;
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;                  // fromFile() will report it
+		}
+	}
+
+	/**
+	 * The sha1sum line of a file, null if it can't be read (the error is already reported).
+	 */
+	private String line(Path file) {
+		try {
+			String hash = Sha1.fromFile(file).toString();
+			String name = file.toString();
+			if (name.indexOf('\\') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0)
+				return hash + "  " + name;
+			return "\\" + hash + "  " + name.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+		} catch (IOException e) {
+			error(file + ": " + e);
+			return null;
+		}
+	}
+
+	private String result(Future<String> line) throws InterruptedException {
+		try {
+			return line.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private synchronized void print(String line) {
+		if (line != null) out.println(line);
+	}
+
+	private synchronized void error(String message) {
+		failed = true;
+		System.err.println("sha1: " + message);
+	}
+
+	/**
+	 * java com.draxar.crypto.Sha1Sum [-j threads] [-b budget in MB] [-u] file|dir...
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long budget = 256L << 20;
+		boolean ordered = true;
+		List<Path> paths = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-j": threads = Integer.parseInt(args[++i]); break;
+					case "-b": budget = Long.parseLong(args[++i]) << 20; break;
+					case "-u": ordered = false; break;
+					default:   paths.add(Paths.get(args[i]));
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			paths.clear();
+		}
+		if (paths.isEmpty()) {
+			System.out.println("Usage: java com.draxar.crypto.Sha1Sum [-j threads] [-b budget in MB] [-u] file|dir...");
+			System.out.println("  -j  files hashed at the same time (default: number of cores)");
+			System.out.println("  -b  MB of files being hashed at the same time (default: 256)");
+			System.out.println("  -u  print the lines as the files are done, not in input order");
+			System.exit(2);
+		}
+		boolean ok = new Sha1Sum(threads, budget, ordered, System.out).hash(paths);
+		System.out.flush();
+		System.exit(ok ? 0 : 1);
+	}
+}
@@ -0,0 +1,90 @@
+package com.draxar.crypto;
+
+import static com.draxar.crypto.Sha1.K1;
+import static com.draxar.crypto.Sha1.K2;
+import static com.draxar.crypto.Sha1.K3;
+import static com.draxar.crypto.Sha1.K4;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API kernel of Sha1Lanes: one IntVector holds the same word of all the lanes,
+ * so each operation of a round is a single SIMD instruction for all the messages.
+ * <p>The lanes follow the preferred shape of the machine: 8 with 256-bit SIMD or more (AVX2, AVX-512),
+ * 4 with 128-bit SIMD (SSE, NEON). A smaller shape would not be compiled to SIMD instructions and
+ * would be far slower than the scalar kernel, so the constructor refuses it and Sha1Lanes falls back.
+ * <p>Needs the incubating Vector API, both to compile and to run:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/com/draxar/crypto/Sha1LanesVector.java
+ * java --add-modules jdk.incubator.vector -cp bin ...
+ * </pre>
+ * The round functions are the ones of Sha1 (F1 to F4), written again with vector operations.
+ * The constants K1 to K4 are Sha1's.
+ *
+ * @author drax
+ */
+final class Sha1LanesVector implements Sha1Lanes.Kernel {
+	private static final VectorSpecies<Integer> SPECIES =
+			IntVector.SPECIES_PREFERRED.length() >= 8 ? IntVector.SPECIES_256 : IntVector.SPECIES_128;
+	private static final int L = SPECIES.length();
+
+	Sha1LanesVector() {
+		if (IntVector.SPECIES_PREFERRED.length() < 4)
+			throw new UnsupportedOperationException("No 128-bit SIMD: " + IntVector.SPECIES_PREFERRED);
+	}
+
+	@Override
+	public int lanes() {
+		return L;
+	}
+
+	@Override
+	public void compress(int[] s, int[] w, int[] work) {
+		IntVector a = IntVector.fromArray(SPECIES, s, 0);
+		IntVector b = IntVector.fromArray(SPECIES, s, L);
+		IntVector c = IntVector.fromArray(SPECIES, s, 2 * L);
+		IntVector d = IntVector.fromArray(SPECIES, s, 3 * L);
+		IntVector e = IntVector.fromArray(SPECIES, s, 4 * L);
+		for (int t = 0; t < 80; t++) {
+			IntVector x;
+			if (t < 16) {
+				x = IntVector.fromArray(SPECIES, w, t * L);
+			} else {
+				x = IntVector.fromArray(SPECIES, w, (t & 15) * L)
+						.lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, w, ((t - 3) & 15) * L))
+						.lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, w, ((t - 8) & 15) * L))
+						.lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, w, ((t - 14) & 15) * L))
+						.lanewise(VectorOperators.ROL, 1);
+				x.intoArray(w, (t & 15) * L);
+			}
+			IntVector f;
+			int k;
+			if (t < 20) {          // F1: d ^ (b & (c ^ d))
+				f = d.lanewise(VectorOperators.XOR, b.and(c.lanewise(VectorOperators.XOR, d)));
+				k = K1;
+			} else if (t < 40) {   // F2: b ^ c ^ d
+				f = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, d);
+				k = K2;
+			} else if (t < 60) {   // F3: (b & c) | (d & (b | c))
+				f = b.and(c).or(d.and(b.or(c)));
+				k = K3;
+			} else {               // F4: b ^ c ^ d
+				f = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, d);
+				k = K4;
+			}
+			IntVector tmp = a.lanewise(VectorOperators.ROL, 5).add(f).add(e).add(x).add(k);
+			e = d;
+			d = c;
+			c = b.lanewise(VectorOperators.ROL, 30);
+			b = a;
+			a = tmp;
+		}
+		a.add(IntVector.fromArray(SPECIES, s, 0)).intoArray(s, 0);
+		b.add(IntVector.fromArray(SPECIES, s, L)).intoArray(s, L);
+		c.add(IntVector.fromArray(SPECIES, s, 2 * L)).intoArray(s, 2 * L);
+		d.add(IntVector.fromArray(SPECIES, s, 3 * L)).intoArray(s, 3 * L);
+		e.add(IntVector.fromArray(SPECIES, s, 4 * L)).intoArray(s, 4 * L);
+	}
+}